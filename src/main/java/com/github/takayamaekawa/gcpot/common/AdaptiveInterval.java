@@ -0,0 +1,75 @@
+package com.github.takayamaekawa.gcpot.common;
+
+/**
+ * ステータス確認の間隔を状況に応じて決める
+ * コマンド直後や状態変化が未確定の間は最小間隔で確認し、安定していれば徐々に、APIエラーが続けばさらに間隔を延ばす
+ * 間隔は常に最小値と最大値の範囲に収める
+ */
+public class AdaptiveInterval {
+  private static final double STABLE_BACKOFF = 1.5;
+  private static final double ERROR_BACKOFF = 2.0;
+  private final long minMillis, maxMillis, fastWindowMillis;
+  private long currentMillis;
+  private volatile long fastUntil = 0;
+
+  public enum Outcome {
+    /** 前回から状態が変わった */
+    CHANGED,
+    /** 状態が遷移中 (例: STAGING, STOPPING) */
+    UNCONFIRMED,
+    /** 前回と同じ状態 */
+    STABLE,
+    /** 確認に失敗した */
+    ERROR
+  }
+
+  public AdaptiveInterval(long minMillis, long maxMillis, long fastWindowMillis) {
+    this.minMillis = minMillis;
+    this.maxMillis = Math.max(minMillis, maxMillis);
+    this.fastWindowMillis = fastWindowMillis;
+    this.currentMillis = minMillis;
+  }
+
+  /**
+   * コンフィグから作成する
+   * 
+   * @param config        コンフィグ
+   * @param prefix        キーの接頭辞 (例: "GCP.Status")
+   * @param defaultPeriod Periodの既定値 (秒)
+   */
+  public static AdaptiveInterval fromConfig(Config config, String prefix, int defaultPeriod) {
+    int period = config.getInt(prefix + ".Period", defaultPeriod);
+    int min = config.getInt(prefix + ".MinPeriod", Math.min(5, period));
+    int max = config.getInt(prefix + ".MaxPeriod", period * 3);
+    int fastWindow = config.getInt(prefix + ".FastWindow", 120);
+    return new AdaptiveInterval(1000L * min, 1000L * max, 1000L * fastWindow);
+  }
+
+  /**
+   * 確認結果から次の確認までの間隔を決める
+   * 
+   * @return 次の確認までの間隔 (ミリ秒)
+   */
+  public synchronized long next(Outcome outcome) {
+    if (System.currentTimeMillis() < fastUntil) {
+      currentMillis = minMillis;
+      return currentMillis;
+    }
+
+    currentMillis = switch (outcome) {
+      case CHANGED, UNCONFIRMED -> minMillis;
+      case STABLE -> (long) (currentMillis * STABLE_BACKOFF);
+      case ERROR -> (long) (Math.max(currentMillis, minMillis) * ERROR_BACKOFF);
+    };
+    currentMillis = Math.max(minMillis, Math.min(maxMillis, currentMillis));
+    return currentMillis;
+  }
+
+  /**
+   * コマンドの実行後など、しばらくの間は最小間隔で確認させる
+   */
+  public synchronized void boost() {
+    fastUntil = System.currentTimeMillis() + fastWindowMillis;
+    currentMillis = minMillis;
+  }
+}
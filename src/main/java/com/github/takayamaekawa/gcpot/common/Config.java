@@ -32,6 +32,10 @@ public class Config {
     return Config.jarDirPath;
   }
 
+  public Path getDataDirectory() {
+    return dataDirectory;
+  }
+
   public Map<String, Object> getConfig() {
     if (Objects.isNull(config)) {
       // Configのインスタンスが初期化されていない場合は、設定を読み込む
@@ -208,6 +212,20 @@ public class Config {
     return getLong(path, 0L);
   }
 
+  // 階層的なキーを指定して小数を取得する
+  public double getDouble(String path, double defaultValue) {
+    Object value = getNestedValue(path);
+    if (value instanceof Number number) {
+      return number.doubleValue();
+    }
+
+    return defaultValue;
+  }
+
+  public double getDouble(String path) {
+    return getDouble(path, 0.0);
+  }
+
   // 階層的なキーを指定してリストを取得する
   @SuppressWarnings("unchecked")
   public List<String> getList(String path, List<String> defaultValue) {
@@ -15,8 +15,13 @@ import com.google.inject.Injector;
 
 import com.github.takayamaekawa.gcpot.discord.Discord;
 import com.github.takayamaekawa.gcpot.discord.LoopReflect;
+import com.github.takayamaekawa.gcpot.discord.PresenceUpdater;
+import com.github.takayamaekawa.gcpot.gcp.CredentialStore;
 import com.github.takayamaekawa.gcpot.gcp.InstanceManager;
+import com.github.takayamaekawa.gcpot.gcp.InstancesClientRegistry;
 import com.github.takayamaekawa.gcpot.gcp.LoopStatus;
+import com.github.takayamaekawa.gcpot.gcp.OperationTracker;
+import com.github.takayamaekawa.gcpot.mysql.ConnectionPool;
 
 public class Main {
   private static Injector injector = null;
@@ -33,9 +38,13 @@ public class Main {
 
     injector = Guice.createInjector(new com.github.takayamaekawa.gcpot.common.Module(logger, dataDirectory));
 
-    if (injector.getInstance(InstanceManager.class).getCredentials() == null) {
-      return;
-    }
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      injector.getInstance(TickScheduler.class).close();
+      injector.getInstance(OperationTracker.class).close();
+      injector.getInstance(InstancesClientRegistry.class).close();
+      injector.getInstance(CredentialStore.class).close();
+      injector.getInstance(ConnectionPool.class).close();
+    }));
 
     Config config = injector.getInstance(Config.class);
     if (config.getBoolean("GCP.Mode")) {
@@ -46,16 +55,19 @@ public class Main {
         CompletableFuture<Void> allTasks = CompletableFuture.allOf(botLogin);
         allTasks.thenRun(() -> {
           // injector.getInstance(LoopReflect.class).sendEmbedMessage();
+          injector.getInstance(PresenceUpdater.class).start();
           injector.getInstance(LoopReflect.class).start();
         });
       });
 
-      loopStatus.start();
+      // 最初のtickの前に共有クライアントを温めておく
+      injector.getInstance(InstanceManager.class).warmUp().thenRun(loopStatus::start);
     } else {
       CompletableFuture<Void> botLogin = injector.getInstance(Discord.class).loginDiscordBotAsync();
       CompletableFuture<Void> allTasks = CompletableFuture.allOf(botLogin);
       allTasks.thenRun(() -> {
         // injector.getInstance(LoopReflect.class).sendEmbedMessage();
+        injector.getInstance(PresenceUpdater.class).start();
         injector.getInstance(LoopReflect.class).start();
       });
     }
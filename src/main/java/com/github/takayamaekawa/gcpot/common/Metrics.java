@@ -0,0 +1,46 @@
+package com.github.takayamaekawa.gcpot.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 各コンポーネントのカウンターとゲージを名前で集める
+ * (例: "gcp.metadata.hit", "discord.edit.skipped")
+ */
+public final class Metrics {
+  private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private static final Map<String, Supplier<?>> gauges = new ConcurrentHashMap<>();
+
+  private Metrics() {
+  }
+
+  public static void increment(String name) {
+    add(name, 1);
+  }
+
+  public static void add(String name, long delta) {
+    counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+  }
+
+  public static long get(String name) {
+    LongAdder counter = counters.get(name);
+    return counter != null ? counter.sum() : 0;
+  }
+
+  /**
+   * 読み出し時に値を計算するゲージを登録する (同じ名前は上書きする)
+   */
+  public static void gauge(String name, Supplier<?> supplier) {
+    gauges.put(name, supplier);
+  }
+
+  public static Map<String, String> snapshot() {
+    Map<String, String> snapshot = new TreeMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, Long.toString(counter.sum())));
+    gauges.forEach((name, gauge) -> snapshot.put(name, String.valueOf(gauge.get())));
+    return snapshot;
+  }
+}
@@ -6,11 +6,20 @@ import java.nio.file.Path;
 import org.slf4j.Logger;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 
+import com.github.takayamaekawa.gcpot.discord.CommandProgress;
+import com.github.takayamaekawa.gcpot.discord.CommandRateLimiter;
+import com.github.takayamaekawa.gcpot.discord.CommandRegistry;
 import com.github.takayamaekawa.gcpot.discord.Discord;
 import com.github.takayamaekawa.gcpot.discord.DiscordEventListener;
 import com.github.takayamaekawa.gcpot.discord.DiscordInterface;
+import com.github.takayamaekawa.gcpot.discord.GuildIndex;
 import com.github.takayamaekawa.gcpot.discord.LoopReflect;
+import com.github.takayamaekawa.gcpot.discord.PresenceUpdater;
+import com.github.takayamaekawa.gcpot.discord.UpdateGate;
+import com.github.takayamaekawa.gcpot.discord.UpdateQueue;
+import com.github.takayamaekawa.gcpot.mysql.ConnectionPool;
 import com.github.takayamaekawa.gcpot.mysql.Database;
 import com.github.takayamaekawa.gcpot.mysql.DatabaseInterface;
 
@@ -33,13 +42,29 @@ public class Module extends AbstractModule {
     // 以下、Guiceが、クラス同士の依存性を自動判別するため、bindを書く順番はインジェクションの依存関係に関係しない。
     bind(Logger.class).toInstance(logger);
     bind(Config.class).toInstance(config);
+    bind(ConnectionPool.class).in(Singleton.class);
     bind(DatabaseInterface.class).to(Database.class);
     bind(DiscordInterface.class).to(Discord.class);
     bind(DiscordEventListener.class);
+    bind(CommandRegistry.class);
+    bind(GuildIndex.class).in(Singleton.class);
     bind(LoopReflect.class);
-    bind(com.github.takayamaekawa.gcpot.gcp.InstanceManager.class);
+    bind(TickScheduler.class).in(Singleton.class);
+    bind(StatusHub.class).in(Singleton.class);
+    bind(PresenceUpdater.class);
+    bind(UpdateGate.class).in(Singleton.class);
+    bind(UpdateQueue.class).in(Singleton.class);
+    bind(CommandProgress.class).in(Singleton.class);
+    bind(CommandRateLimiter.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.gcp.InstanceManager.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.gcp.InstancesClientRegistry.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.gcp.OperationTracker.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.gcp.CredentialStore.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.gcp.MetadataCache.class).in(Singleton.class);
     bind(com.github.takayamaekawa.gcpot.gcp.LoopStatus.class);
     bind(com.github.takayamaekawa.gcpot.nongcp.InstanceManager.class);
     bind(com.github.takayamaekawa.gcpot.nongcp.LoopStatus.class);
+    bind(com.github.takayamaekawa.gcpot.probe.HttpProbe.class).in(Singleton.class);
+    bind(com.github.takayamaekawa.gcpot.probe.ServerListPing.class).in(Singleton.class);
   }
 }
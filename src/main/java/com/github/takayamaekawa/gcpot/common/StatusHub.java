@@ -0,0 +1,73 @@
+package com.github.takayamaekawa.gcpot.common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+/**
+ * LoopStatusが確認した状態を保持し、変化したときだけ購読者 (LoopReflect, プレゼンス, コマンド処理) へ配信する
+ */
+public class StatusHub {
+  private final Logger logger;
+  private final AtomicReference<StatusSnapshot> current = new AtomicReference<>(StatusSnapshot.UNKNOWN);
+  private final List<Consumer<StatusSnapshot>> subscribers = new CopyOnWriteArrayList<>();
+
+  @Inject
+  public StatusHub(Logger logger) {
+    this.logger = logger;
+    Metrics.gauge("status.version", () -> current.get().version());
+  }
+
+  /**
+   * 最後に確認した状態 (ロックなしで読める)
+   */
+  public StatusSnapshot current() {
+    return current.get();
+  }
+
+  /**
+   * 状態の変化を購読する (すでに状態が確認済みであれば、その状態をすぐに1回渡す)
+   */
+  public void subscribe(Consumer<StatusSnapshot> subscriber) {
+    subscribers.add(subscriber);
+    StatusSnapshot snapshot = current.get();
+    if (snapshot.isConfirmed()) {
+      deliver(subscriber, snapshot);
+    }
+  }
+
+  /**
+   * 確認した状態を記録し、前回から変化していれば購読者へ配信する
+   * 
+   * @return 状態が変化して配信した場合true
+   */
+  public boolean publish(StatusSnapshot.State state, long latencyMillis, String lastError) {
+    StatusSnapshot previous, next;
+    do {
+      previous = current.get();
+      next = new StatusSnapshot(state, previous.version() + 1, System.currentTimeMillis(), latencyMillis, lastError);
+    } while (!current.compareAndSet(previous, next));
+
+    if (previous.isConfirmed() && previous.state() == state) {
+      return false;
+    }
+
+    logger.info("Status changed: " + (previous.isConfirmed() ? previous.state() : "UNKNOWN") + " -> " + state);
+    StatusSnapshot snapshot = next;
+    subscribers.forEach(subscriber -> deliver(subscriber, snapshot));
+    return true;
+  }
+
+  private void deliver(Consumer<StatusSnapshot> subscriber, StatusSnapshot snapshot) {
+    try {
+      subscriber.accept(snapshot);
+    } catch (RuntimeException e) {
+      logger.error("Status subscriber error: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.takayamaekawa.gcpot.common;
+
+/**
+ * ある時点で確認したサーバーの状態 (StatusHubが1回のCASで丸ごと差し替えるため、読み手は常に一貫した値を見る)
+ * 
+ * @param state         状態
+ * @param version       確認するたびに1ずつ増える番号 (0は未確認)
+ * @param observedAt    確認した時刻 (System.currentTimeMillis)
+ * @param latencyMillis 確認にかかった時間
+ * @param lastError     確認に失敗したときのエラーメッセージ (成功時はnull)
+ */
+public record StatusSnapshot(State state, long version, long observedAt, long latencyMillis, String lastError) {
+
+  public enum State {
+    RUNNING,
+    FREEZING,
+    STOPPED;
+
+    public static State of(boolean running, boolean freezing) {
+      return running ? (freezing ? FREEZING : RUNNING) : STOPPED;
+    }
+  }
+
+  public static final StatusSnapshot UNKNOWN = new StatusSnapshot(State.STOPPED, 0, 0, 0, null);
+
+  public boolean isRunning() {
+    return state != State.STOPPED;
+  }
+
+  public boolean isFreezing() {
+    return state == State.FREEZING;
+  }
+
+  public boolean isConfirmed() {
+    return version > 0;
+  }
+}
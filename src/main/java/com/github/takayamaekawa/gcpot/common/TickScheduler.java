@@ -0,0 +1,195 @@
+package com.github.takayamaekawa.gcpot.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+/**
+ * 定期実行する処理をまとめて管理するスケジューラー
+ * 処理は仮想スレッドで実行し、前回の処理が終わっていなければ今回のtickはスキップ (または終了後に1回にまとめて実行) する
+ * tickごとにジッターを加え、実行回数・スキップ・超過などを "scheduler.{ジョブ名}.*" のメトリクスに記録する
+ */
+public class TickScheduler {
+  private static final long RETRY_MILLIS = 5000;
+  private final Logger logger;
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    return new Thread(runnable, "tick-scheduler");
+  });
+  private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+  public final class Job {
+    private final String name;
+    private final long jitterMillis;
+    private final long periodMillis; // 固定周期のジョブのみ (0の場合は処理の結果で次の間隔を決める, 負の場合は定期実行しない)
+    private final Supplier<CompletableFuture<Long>> task;
+    // running/rerun/pending/generationはこのJobのロックの中でまとめて更新する
+    private boolean running = false;
+    private boolean rerun = false;
+    private long generation = 0;
+    private volatile long plannedMillis;
+    private volatile long lastMillis = 0;
+    private ScheduledFuture<?> pending = null;
+
+    private Job(String name, long jitterMillis, long periodMillis, Supplier<CompletableFuture<Long>> task) {
+      this.name = name;
+      this.jitterMillis = jitterMillis;
+      this.periodMillis = periodMillis;
+      this.plannedMillis = periodMillis;
+      this.task = task;
+      Metrics.gauge("scheduler." + name + ".plannedMillis", () -> plannedMillis);
+      Metrics.gauge("scheduler." + name + ".lastMillis", () -> lastMillis);
+    }
+
+    /**
+     * 待機中のtickを前倒しして、すぐに実行する (実行中であれば終了後に1回だけ実行する)
+     */
+    public void trigger() {
+      synchronized (this) {
+        if (running) {
+          rerun = true;
+          Metrics.increment("scheduler." + name + ".coalesced");
+          return;
+        }
+
+        // 固定周期のジョブは周期を保つため、予約済みのtickはそのままにする
+        // 処理の結果で間隔を決めるジョブは、予約済みのtickを取り消して終了後に予約し直す (予約の連鎖を1つに保つ)
+        if (periodMillis == 0 && pending != null) {
+          pending.cancel(false);
+          pending = null;
+          generation++;
+        }
+        running = true;
+      }
+
+      run(this);
+    }
+
+    private synchronized void schedule(long delayMillis) {
+      plannedMillis = delayMillis;
+      long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+      long scheduledGeneration = ++generation;
+      pending = timer.schedule(() -> fire(this, scheduledGeneration), delayMillis + jitter, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Inject
+  public TickScheduler(Logger logger) {
+    this.logger = logger;
+  }
+
+  /**
+   * 固定周期で実行する (前回の処理が終わっていないtickはスキップする)
+   * 
+   * @param name         ジョブ名 (メトリクスの名前に使う)
+   * @param periodMillis 周期 (ミリ秒, 0以下なら定期実行はせず、triggerされたときだけ実行する)
+   * @param jitterMillis tickごとに加える最大のジッター (ミリ秒)
+   * @param task         処理 (返したFutureが完了するまでを1回の処理とみなす)
+   */
+  public Job scheduleAtFixedRate(String name, long periodMillis, long jitterMillis,
+      Supplier<CompletableFuture<?>> task) {
+    if (periodMillis <= 0) {
+      logger.info("Scheduled job disabled: " + name + " (period " + periodMillis + "ms)");
+      return new Job(name, jitterMillis, -1, () -> task.get().thenApply(result -> 0L));
+    }
+
+    Job job = new Job(name, jitterMillis, periodMillis, () -> task.get().thenApply(result -> periodMillis));
+    job.schedule(0);
+    return job;
+  }
+
+  /**
+   * 処理が終わるたびに、処理の結果で次の間隔を決めて実行する
+   * 
+   * @param name         ジョブ名 (メトリクスの名前に使う)
+   * @param jitterMillis tickごとに加える最大のジッター (ミリ秒)
+   * @param task         処理 (次のtickまでの間隔をミリ秒で返す)
+   */
+  public Job scheduleAdaptive(String name, long jitterMillis, Supplier<CompletableFuture<Long>> task) {
+    Job job = new Job(name, jitterMillis, 0, task);
+    job.schedule(0);
+    return job;
+  }
+
+  // タイマーから呼ばれるtick
+  private void fire(Job job, long scheduledGeneration) {
+    synchronized (job) {
+      // 取り消し・予約し直しの後に遅れて動いた古いtickは捨てる
+      if (scheduledGeneration != job.generation) {
+        return;
+      }
+
+      // 固定周期のジョブは、処理の終了を待たずに次のtickを予約する
+      if (job.periodMillis > 0) {
+        job.schedule(job.periodMillis);
+      } else {
+        job.pending = null;
+      }
+
+      if (job.running) {
+        Metrics.increment("scheduler." + job.name + ".skipped");
+        return;
+      }
+      job.running = true;
+    }
+
+    run(job);
+  }
+
+  // running=trueにした呼び出し元だけが呼ぶ
+  private void run(Job job) {
+    long start = System.nanoTime();
+    long planned = job.plannedMillis;
+    workers.execute(() -> {
+      CompletableFuture<Long> future;
+      try {
+        future = job.task.get();
+      } catch (RuntimeException e) {
+        future = CompletableFuture.failedFuture(e);
+      }
+
+      future.whenComplete((nextDelay, ex) -> {
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        Metrics.increment("scheduler." + job.name + ".runs");
+        job.lastMillis = elapsed;
+        if (planned > 0 && elapsed > planned) {
+          Metrics.increment("scheduler." + job.name + ".overrun");
+          logger.info("Tick overrun: " + job.name + " took " + elapsed + "ms (interval " + planned + "ms)");
+        }
+
+        if (ex != null) {
+          Metrics.increment("scheduler." + job.name + ".errors");
+          logger.error("Scheduled job error: " + job.name + ": " + ex.getMessage(), ex);
+        }
+
+        // 終了・再実行・次の予約を1つのロックの中で決め、triggerと競合して予約の連鎖が増えないようにする
+        boolean rerun;
+        synchronized (job) {
+          rerun = job.rerun;
+          job.rerun = false;
+          job.running = rerun;
+          if (!rerun && job.periodMillis == 0) {
+            job.schedule(nextDelay != null ? nextDelay : Math.max(planned, RETRY_MILLIS));
+          }
+        }
+
+        if (rerun) {
+          run(job);
+        }
+      });
+    });
+  }
+
+  public void close() {
+    timer.shutdownNow();
+    workers.shutdownNow();
+  }
+}
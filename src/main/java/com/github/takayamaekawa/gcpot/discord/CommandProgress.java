@@ -0,0 +1,112 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import com.github.takayamaekawa.gcpot.gcp.InstanceTarget;
+import com.github.takayamaekawa.gcpot.gcp.OperationTracker;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+
+/**
+ * start/stop/resetの進捗を、コマンドの応答メッセージに追記していく
+ * 本文はメモリ上で組み立て、インタラクションのhookからeditOriginalで編集する (スレッドはブロックしない)
+ * 実行中はOperationTrackerが報告するGCEの進捗を最後の1行に表示する
+ */
+public class CommandProgress {
+  private final Logger logger;
+  private final UpdateQueue queue;
+  private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+  private record Operation(CompletableFuture<InteractionHook> hook, InstanceTarget target,
+      AtomicReference<String> content, AtomicReference<String> status) {
+  }
+
+  @Inject
+  public CommandProgress(Logger logger, UpdateQueue queue, OperationTracker tracker) {
+    this.logger = logger;
+    this.queue = queue;
+    Metrics.gauge("discord.progress.active", operations::size);
+    tracker.addProgressListener(this::onProgress);
+  }
+
+  /**
+   * 応答を保留 (deferReply) し、最初の本文を表示する
+   * 
+   * @param target 操作するインスタンス (GCEの進捗を表示する)
+   * @return 操作ID (以降のappend/finishに渡す)
+   */
+  public String begin(SlashCommandInteractionEvent e, InstanceTarget target, String content) {
+    String operationId = e.getId();
+    CompletableFuture<InteractionHook> hook = e.deferReply(false).submit();
+    hook.exceptionally(ex -> {
+      logger.error("Failed to defer reply: " + ex.getMessage());
+      return null;
+    });
+    Operation operation = new Operation(hook, target, new AtomicReference<>(content), new AtomicReference<>());
+    operations.put(operationId, operation);
+    send(operationId, operation);
+    return operationId;
+  }
+
+  /**
+   * 本文に1行追記する
+   */
+  public void append(String operationId, String line) {
+    Operation operation = operations.get(operationId);
+    if (operation == null) {
+      return;
+    }
+
+    operation.content().updateAndGet(current -> current + "\n" + line);
+    send(operationId, operation);
+  }
+
+  /**
+   * 本文に最後の1行を追記し、操作を終える
+   */
+  public void finish(String operationId, String line) {
+    Operation operation = operations.get(operationId);
+    if (operation != null) {
+      operation.status().set(null);
+    }
+
+    append(operationId, line);
+    finish(operationId);
+  }
+
+  public void finish(String operationId) {
+    operations.remove(operationId);
+  }
+
+  // 同じインスタンスを操作しているコマンドの進捗行を書き換える (完了は各コマンドがfinishで書く)
+  private void onProgress(OperationTracker.Progress progress) {
+    boolean done = progress.status().equals("DONE") || progress.status().equals("FAILED");
+    String line = done ? null
+        : "GCE: " + progress.status() + " " + progress.progress() + "% (" + progress.elapsed().toSeconds() + "s)";
+    operations.forEach((operationId, operation) -> {
+      if (progress.target().equals(operation.target())) {
+        operation.status().set(line);
+        send(operationId, operation);
+      }
+    });
+  }
+
+  private void send(String operationId, Operation operation) {
+    // hookが返る前に追記が重なっても、送信時点の最新の本文を送る
+    operation.hook().thenAccept(hook -> {
+      if (hook != null) {
+        String status = operation.status().get();
+        String content = operation.content().get();
+        queue.submit("command:" + operationId, hook.editOriginal(status == null ? content : content + "\n" + status));
+      }
+    });
+  }
+}
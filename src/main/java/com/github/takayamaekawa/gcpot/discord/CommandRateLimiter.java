@@ -0,0 +1,128 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * ユーザーごと・ロールごと (ロールのメンバーで共有) ・操作ごとのトークンバケット
+ * トークンはアクセスされたときに経過時間から補充するため、タイマーは使わない
+ * 満タンに戻ったバケットは新規作成と同じなので、上限を超えたら捨ててメモリを抑える
+ */
+public class CommandRateLimiter {
+  private final Map<String, Entry> buckets = new ConcurrentHashMap<>();
+  private final double capacity, roleCapacity;
+  private final long refillNanos;
+  private final int maxBuckets;
+
+  private record Bucket(double tokens, long updatedAt) {
+  }
+
+  // 捨てる途中のバケット (これを見たら新しいバケットで取り直す)
+  private static final Bucket RETIRED = new Bucket(-1, 0);
+
+  private record Entry(double limit, AtomicReference<Bucket> state) {
+  }
+
+  /**
+   * @param allowed          実行してよい場合true
+   * @param retryAfterMillis 拒否した場合、次のトークンが補充されるまでの時間
+   */
+  public record Decision(boolean allowed, long retryAfterMillis) {
+  }
+
+  @Inject
+  public CommandRateLimiter(Config config) {
+    long period = config.getLong("Discord.Command.Period", 60);
+    this.refillNanos = 1_000_000_000L * config.getLong("Discord.Command.RateLimit.RefillPeriod", period);
+    this.capacity = Math.max(1, config.getDouble("Discord.Command.RateLimit.Capacity", 1));
+    this.roleCapacity = Math.max(1, config.getDouble("Discord.Command.RateLimit.RoleCapacity", capacity));
+    this.maxBuckets = config.getInt("Discord.Command.RateLimit.MaxBuckets", 10000);
+    Metrics.gauge("discord.ratelimit.buckets", buckets::size);
+  }
+
+  /**
+   * トークンを1つ消費する
+   * ユーザーのバケット (Capacity) と、ロールを持っていればロールのメンバーで共有するバケット (RoleCapacity) の両方から消費する
+   * 
+   * @param userId     ユーザーID
+   * @param roleId     GCPRoleIdを持っていればそのID、なければnull
+   * @param action     start/stop/resetなど
+   */
+  public Decision tryAcquire(String userId, String roleId, String action) {
+    long now = System.nanoTime();
+    if (buckets.size() >= maxBuckets) {
+      evictFull(now);
+    }
+
+    String userKey = "user:" + userId + ":" + action;
+    long retryAfter = take(userKey, capacity, now);
+    if (retryAfter == 0 && roleId != null) {
+      retryAfter = take("role:" + roleId + ":" + action, roleCapacity, now);
+      if (retryAfter > 0) {
+        // ロールのトークンが足りなければ、消費したユーザーのトークンを戻す
+        refund(userKey, capacity);
+      }
+    }
+
+    if (retryAfter > 0) {
+      Metrics.increment("discord.ratelimit.rejected");
+      return new Decision(false, retryAfter);
+    }
+
+    Metrics.increment("discord.ratelimit.allowed");
+    return new Decision(true, 0);
+  }
+
+  // トークンを1つ消費し、消費できなければ次のトークンまでのミリ秒を返す (消費できたら0)
+  private long take(String key, double limit, long now) {
+    while (true) {
+      Entry entry = buckets.computeIfAbsent(key, k -> new Entry(limit, new AtomicReference<>(new Bucket(limit, now))));
+      Bucket current = entry.state().get();
+      if (current == RETIRED) {
+        buckets.remove(key, entry);
+        continue;
+      }
+
+      double tokens = refill(current, now, limit);
+      if (tokens < 1) {
+        return Math.max(1, (long) ((1 - tokens) * refillNanos) / 1_000_000);
+      }
+
+      if (entry.state().compareAndSet(current, new Bucket(tokens - 1, now))) {
+        return 0;
+      }
+    }
+  }
+
+  private void refund(String key, double limit) {
+    Entry entry = buckets.get(key);
+    if (entry == null) {
+      return;
+    }
+
+    entry.state().getAndUpdate(current -> current == RETIRED ? current
+        : new Bucket(Math.min(limit, current.tokens() + 1), current.updatedAt()));
+  }
+
+  private double refill(Bucket bucket, long now, double limit) {
+    return Math.min(limit, bucket.tokens() + (double) (now - bucket.updatedAt()) / refillNanos);
+  }
+
+  // 満タンに戻ったバケットを捨てる
+  // 同時に消費しているスレッドのトークンを失わないように、満タンのままRETIREDに置き換えられたものだけを取り除く
+  private void evictFull(long now) {
+    buckets.forEach((key, entry) -> {
+      Bucket current = entry.state().get();
+      if (current != RETIRED && refill(current, now, entry.limit()) >= entry.limit()
+          && entry.state().compareAndSet(current, RETIRED)) {
+        buckets.remove(key, entry);
+      }
+    });
+  }
+}
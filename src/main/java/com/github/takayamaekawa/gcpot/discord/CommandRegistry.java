@@ -0,0 +1,149 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import com.github.takayamaekawa.gcpot.gcp.InstanceManager;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
+
+/**
+ * スラッシュコマンドの定義をここで1回だけ宣言し、前回登録した内容のハッシュと違うときだけまとめて登録する
+ * ハッシュはアプリケーションごとに保存する (一致すればREST呼び出しはしない)
+ * Discord側で削除されたコマンドを戻したい場合は、Discord.Command.Verifyをtrueにすると起動時に登録済みの一覧と照合する
+ * 登録はupsertCommandで行うので、このクラスが知らない他のグローバルコマンドは消さない
+ */
+public class CommandRegistry {
+  private final Logger logger;
+  private final Config config;
+  private final InstanceManager gcp;
+
+  @Inject
+  public CommandRegistry(Logger logger, Config config, InstanceManager gcp) {
+    this.logger = logger;
+    this.config = config;
+    this.gcp = gcp;
+  }
+
+  /**
+   * Botが登録するコマンドの定義
+   */
+  public List<CommandData> declare() {
+    List<CommandData> commands = new ArrayList<>();
+    if (config.getBoolean("GCP.Mode", false)) {
+      SubcommandData gcpCommand = new SubcommandData("gcp", "GCP commands")
+          .addOptions(new OptionData(OptionType.STRING, "action", "Choose an action")
+              .addChoice("Status", "status")
+              .addChoice("Start", "start")
+              .addChoice("Reset", "reset")
+              .addChoice("Stop", "stop")
+              .addChoice("Metrics", "metrics"));
+      if (gcp.isFleetMode()) {
+        // 選択肢は最大25個まで
+        OptionData instanceOption = new OptionData(OptionType.STRING, "instance", "Choose an instance", false);
+        gcp.getTargets().stream().limit(25)
+            .forEach(target -> instanceOption.addChoice(target.name(), target.name()));
+        gcpCommand.addOptions(instanceOption);
+      }
+
+      commands.add(Commands.slash("fmc", "FMC commands").addSubcommands(gcpCommand));
+    }
+
+    return commands;
+  }
+
+  /**
+   * 定義が前回の登録から変わっていれば、upsertCommandで登録する
+   */
+  public CompletableFuture<Void> sync(JDA jda) {
+    List<CommandData> commands = declare();
+    if (commands.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    long start = System.nanoTime();
+    StringBuilder definition = new StringBuilder();
+    commands.forEach(command -> definition.append(command.toData().toString()).append('\n'));
+    String hash = Hashing.sha256().hashString(definition, StandardCharsets.UTF_8).toString();
+    // トークン(アプリケーション)を変えたときに、別のBotのハッシュで登録をスキップしないようにする
+    Path hashFile = config.getDataDirectory().resolve("commands-" + jda.getSelfUser().getApplicationId() + ".sha256");
+    if (!hash.equals(readHash(hashFile))) {
+      return push(jda, commands, hashFile, hash, start);
+    }
+
+    if (!config.getBoolean("Discord.Command.Verify", false)) {
+      skipped(start);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // 定義が同じでも、Discord側で削除されていれば登録し直す (一覧の取得だけなので、登録より軽い)
+    Set<String> declared = commands.stream().map(CommandData::getName).collect(Collectors.toSet());
+    return jda.retrieveCommands().submit().thenCompose(registered -> {
+      Set<String> names = registered.stream().map(Command::getName).collect(Collectors.toSet());
+      if (names.containsAll(declared)) {
+        skipped(start);
+        return CompletableFuture.completedFuture(null);
+      }
+
+      logger.info("Discord側のスラッシュコマンドが定義と一致しないため、登録し直します。");
+      return push(jda, commands, hashFile, hash, start);
+    }).exceptionally(ex -> {
+      logger.error("Failed to retrieve slash commands: " + ex.getMessage());
+      return null;
+    });
+  }
+
+  // 登録をスキップした場合も同じゲージに時間を記録し、登録した場合と比べられるようにする
+  private void skipped(long start) {
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    Metrics.increment("discord.commands.skipped");
+    Metrics.gauge("discord.commands.syncMillis", () -> elapsed);
+    logger.info("スラッシュコマンドに変更がないため、登録をスキップしました (" + elapsed + "ms)");
+  }
+
+  private CompletableFuture<Void> push(JDA jda, List<CommandData> commands, Path hashFile, String hash, long start) {
+    return CompletableFuture.allOf(commands.stream()
+        .map(command -> jda.upsertCommand(command).submit())
+        .toArray(CompletableFuture[]::new)).thenRun(() -> {
+      long elapsed = (System.nanoTime() - start) / 1_000_000;
+      Metrics.increment("discord.commands.pushed");
+      Metrics.gauge("discord.commands.syncMillis", () -> elapsed);
+      logger.info("スラッシュコマンドを登録しました (" + commands.size() + "件, " + elapsed + "ms)");
+      try {
+        Files.writeString(hashFile, hash);
+      } catch (IOException e) {
+        logger.error("Failed to save " + hashFile.getFileName() + ": " + e.getMessage());
+      }
+    }).exceptionally(ex -> {
+      logger.error("Failed to register slash commands: " + ex.getMessage());
+      return null;
+    });
+  }
+
+  private String readHash(Path hashFile) {
+    try {
+      return Files.exists(hashFile) ? Files.readString(hashFile).trim() : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
@@ -1,7 +1,11 @@
 package com.github.takayamaekawa.gcpot.discord;
 
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.login.LoginException;
 
@@ -11,32 +15,79 @@ import com.google.inject.Inject;
 
 import com.github.takayamaekawa.gcpot.common.Config;
 import com.github.takayamaekawa.gcpot.common.Main;
+import com.github.takayamaekawa.gcpot.common.Metrics;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Activity;
-import net.dv8tion.jda.api.interactions.commands.OptionType;
-import net.dv8tion.jda.api.interactions.commands.build.OptionData;
-import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
-import net.dv8tion.jda.api.requests.restaction.CommandCreateAction;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 
 public class Discord implements DiscordInterface {
   public static JDA jda = null;
+  public static ShardManager shardManager = null;
   public static boolean isDiscord = false;
 
   private final Logger logger;
   private final Config config;
+  private final CommandRegistry commandRegistry;
 
   @Inject
-  public Discord(Logger logger, Config config) {
+  public Discord(Logger logger, Config config, CommandRegistry commandRegistry) {
     this.logger = logger;
     this.config = config;
+    this.commandRegistry = commandRegistry;
   }
 
+  /**
+   * シャードモードではシャード0を返す (グローバルなコマンド登録などに使う)
+   */
   @Override
   public JDA getJDA() {
     return jda;
   }
 
+  public List<JDA> getShards() {
+    if (Objects.nonNull(shardManager)) {
+      return shardManager.getShards();
+    }
+
+    return Objects.nonNull(jda) ? List.of(jda) : List.of();
+  }
+
+  /**
+   * ギルドを担当するシャード (Discordの規則: (guildId >> 22) % シャード数)
+   */
+  public JDA getShardFor(long guildId) {
+    if (Objects.isNull(shardManager)) {
+      return jda;
+    }
+
+    return shardManager.getShardById((int) ((guildId >> 22) % shardManager.getShardsTotal()));
+  }
+
+  /**
+   * ギルドが分かっていれば担当シャードだけを探し、分からなければ全シャードから探す
+   */
+  public TextChannel getTextChannel(long guildId, long channelId) {
+    if (guildId != 0) {
+      JDA shard = getShardFor(guildId);
+      return Objects.nonNull(shard) ? shard.getTextChannelById(channelId) : null;
+    }
+
+    if (Objects.nonNull(shardManager)) {
+      return shardManager.getTextChannelById(channelId);
+    }
+
+    return Objects.nonNull(jda) ? jda.getTextChannelById(channelId) : null;
+  }
+
   @Override
   public CompletableFuture<Void> loginDiscordBotAsync() {
     return CompletableFuture.runAsync(() -> {
@@ -44,30 +95,69 @@ public class Discord implements DiscordInterface {
         return;
       // Thread backgroundTask = new Thread(() -> {
       try {
-        jda = JDABuilder.createDefault(config.getString("Discord.Token"))
-            .addEventListeners(Main.getInjector().getInstance(DiscordEventListener.class))
-            .build();
-
-        // Botが完全に起動するのを待つ
-        jda.awaitReady();
-
-        if (config.getBoolean("GCP.Mode", false)) {
-          CommandCreateAction createFmcCommand = jda.upsertCommand("fmc", "FMC commands");
-          createFmcCommand.addSubcommands(
-              new SubcommandData("gcp", "GCP commands")
-                  .addOptions(new OptionData(OptionType.STRING, "action", "Choose an action")
-                      .addChoice("Status", "status")
-                      .addChoice("Start", "start")
-                      .addChoice("Reset", "reset")
-                      .addChoice("Stop", "stop")))
-              .queue();
-          jda.getPresence()
-              .setActivity(Activity.playing(config.getString("Discord.Presence.Activity.Default", "GCPサーバー")));
+        String profile = config.getString("Discord.Profile", "lean");
+        int shardCount = config.getInt("Discord.Shards.Count", 1);
+        long start = System.nanoTime();
+        if (shardCount > 1) {
+          // login()で同期的に作られるのはシャード0だけで、残りは5秒ほどの間隔で順に作られる
+          // そのため、全シャードのReadyEventを数えてから先に進む
+          CountDownLatch ready = new CountDownLatch(shardCount);
+          Object readyListener = new ListenerAdapter() {
+            @Override
+            public void onReady(ReadyEvent e) {
+              ready.countDown();
+            }
+          };
+          shardManager = createShardManagerBuilder(profile)
+              .setShardsTotal(shardCount)
+              .addEventListeners(Main.getInjector().getInstance(DiscordEventListener.class), readyListener)
+              .build();
+
+          // 起動しないシャードがあってもログイン全体が止まらないように、時間を区切って起動済みのシャードで続ける
+          // (シャードは5秒ほどの間隔で順に起動するので、既定はシャード数 x 30秒)
+          long timeout = config.getLong("Discord.Shards.ReadyTimeout", 30L * shardCount);
+          boolean allReady = ready.await(timeout, TimeUnit.SECONDS);
+          shardManager.removeEventListener(readyListener);
+          jda = shardManager.getShardById(0);
+          if (allReady) {
+            logger.info("ShardManagerで" + shardCount + "シャードを起動しました。");
+          } else {
+            logger.error((shardCount - ready.getCount()) + "/" + shardCount + "シャードしか" + timeout
+                + "秒以内に起動しませんでした。起動済みのシャードで続けます。");
+          }
+
+          if (jda == null) {
+            throw new LoginException("Shard 0 did not start");
+          }
         } else {
-          jda.getPresence()
-              .setActivity(Activity.playing(config.getString("Discord.Presence.Activity.Default", "MineCraft")));
+          jda = createBuilder(profile)
+              .addEventListeners(Main.getInjector().getInstance(DiscordEventListener.class))
+              .build();
+
+          // Botが完全に起動するのを待つ
+          jda.awaitReady();
         }
 
+        // プロファイルごとの起動時間とヒープ使用量を比較できるように記録する
+        long startupMillis = (System.nanoTime() - start) / 1_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        long heapMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        Metrics.gauge("discord.startupMillis", () -> startupMillis);
+        Metrics.gauge("discord.shards", () -> getShards().size());
+        Metrics.gauge("discord.guilds", () -> getShards().stream().mapToLong(shard -> shard.getGuildCache().size()).sum());
+        Metrics.gauge("discord.cachedMembers", () -> getShards().stream()
+            .flatMap(shard -> shard.getGuildCache().stream())
+            .mapToLong(guild -> guild.getMemberCache().size()).sum());
+        logger.info("JDA profile: " + profile + ", startup: " + startupMillis + "ms, heap used: " + heapMb + "MB");
+
+        // 定義が変わったときだけ登録する (毎回の起動でREST呼び出しをしない)
+        commandRegistry.sync(jda);
+
+        String defaultActivity = config.getBoolean("GCP.Mode", false)
+            ? config.getString("Discord.Presence.Activity.Default", "GCPサーバー")
+            : config.getString("Discord.Presence.Activity.Default", "MineCraft");
+        getShards().forEach(shard -> shard.getPresence().setActivity(Activity.playing(defaultActivity)));
+
         isDiscord = true;
         logger.info("Discord-Botがログインしました。");
       } catch (LoginException | InterruptedException e) {
@@ -83,10 +173,57 @@ public class Discord implements DiscordInterface {
     });
   }
 
+  /**
+   * leanプロファイルはスラッシュコマンドとステータスメッセージの編集に必要なものだけを有効にする
+   * (インテントはDiscord.Intentsで追加したものだけ、メンバー・プレゼンスのキャッシュとチャンキングは無効)
+   * defaultプロファイルはJDABuilder.createDefaultのまま
+   */
+  private JDABuilder createBuilder(String profile) {
+    String token = config.getString("Discord.Token");
+    if (profile.equalsIgnoreCase("default")) {
+      return JDABuilder.createDefault(token);
+    }
+
+    return JDABuilder.createLight(token, loadIntents())
+        .setMemberCachePolicy(MemberCachePolicy.NONE)
+        .setChunkingFilter(ChunkingFilter.NONE)
+        .disableCache(EnumSet.allOf(CacheFlag.class));
+  }
+
+  // createBuilderのShardManager版 (プロファイルの内容は同じ)
+  private DefaultShardManagerBuilder createShardManagerBuilder(String profile) {
+    String token = config.getString("Discord.Token");
+    if (profile.equalsIgnoreCase("default")) {
+      return DefaultShardManagerBuilder.createDefault(token);
+    }
+
+    return DefaultShardManagerBuilder.createLight(token, loadIntents())
+        .setMemberCachePolicy(MemberCachePolicy.NONE)
+        .setChunkingFilter(ChunkingFilter.NONE)
+        .disableCache(EnumSet.allOf(CacheFlag.class));
+  }
+
+  private EnumSet<GatewayIntent> loadIntents() {
+    EnumSet<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+    for (String intent : config.getList("Discord.Intents", List.of())) {
+      try {
+        intents.add(GatewayIntent.valueOf(intent.trim().toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        // 綴りの誤りでログイン自体が止まらないように、知らないインテントは無視する
+        logger.error("Unknown gateway intent in Discord.Intents: " + intent);
+      }
+    }
+    return intents;
+  }
+
   @Override
   public CompletableFuture<Void> logoutDiscordBot() {
     return CompletableFuture.runAsync(() -> {
-      if (Objects.nonNull(jda)) {
+      if (Objects.nonNull(shardManager)) {
+        shardManager.shutdown();
+        isDiscord = false;
+        logger.info("Discord-Botがログアウトしました。");
+      } else if (Objects.nonNull(jda)) {
         jda.shutdown();
         isDiscord = false;
         logger.info("Discord-Botがログアウトしました。");
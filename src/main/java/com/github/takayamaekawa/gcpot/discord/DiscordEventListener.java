@@ -1,12 +1,8 @@
 package com.github.takayamaekawa.gcpot.discord;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 
@@ -14,13 +10,15 @@ import com.google.api.gax.rpc.ApiException;
 import com.google.inject.Inject;
 
 import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import com.github.takayamaekawa.gcpot.common.StatusHub;
+import com.github.takayamaekawa.gcpot.common.StatusSnapshot;
 import com.github.takayamaekawa.gcpot.gcp.InstanceManager;
-import com.github.takayamaekawa.gcpot.gcp.LoopStatus;
+import com.github.takayamaekawa.gcpot.gcp.InstanceTarget;
+import com.github.takayamaekawa.gcpot.gcp.LifecycleStateMachine;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
-import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -31,39 +29,29 @@ public class DiscordEventListener extends ListenerAdapter {
   public static String PlayerChatMessageId = null;
 
   private final String gcpToken;
-  private final Long gcpChannelId, gcpRoleId, commandPeriod;
+  private final Long gcpChannelId, gcpRoleId;
   private final boolean require, gcpMode;
   private final Logger logger;
   private final InstanceManager gcp;
-  private final AtomicBoolean isInterval;
-  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-  private final List<String> messageIds = new ArrayList<>();
+  private final StatusHub statusHub;
+  private final CommandProgress progress;
+  private final CommandRateLimiter limiter;
 
   @Inject
-  public DiscordEventListener(Logger logger, Config config, InstanceManager gcp) {
+  public DiscordEventListener(Logger logger, Config config, InstanceManager gcp, StatusHub statusHub,
+      CommandProgress progress, CommandRateLimiter limiter) {
     this.logger = logger;
     this.gcp = gcp;
+    this.statusHub = statusHub;
+    this.progress = progress;
+    this.limiter = limiter;
     this.gcpToken = config.getString("Discord.Token", "");
     this.gcpChannelId = config.getLong("Discord.GCPChannelId", 0);
     this.gcpRoleId = config.getLong("Discord.GCPRoleId", 0);
-    this.commandPeriod = config.getLong("Discord.Command.Period", 60);
     this.require = gcpToken != null && !gcpToken.isEmpty() &&
         gcpChannelId != 0 &&
         gcpRoleId != 0;
     this.gcpMode = config.getBoolean("GCP.Mode", false);
-    this.isInterval = new AtomicBoolean(false);
-  }
-
-  public void setFlagForOneMinute(String messageId) {
-    isInterval.set(true);
-    logger.info("Flag set to true");
-    messageIds.add(messageId);
-
-    scheduler.schedule(() -> {
-      isInterval.set(false);
-      logger.info("Flag set to false");
-      messageIds.clear();
-    }, commandPeriod, TimeUnit.SECONDS);
   }
 
   @Override
@@ -84,7 +72,6 @@ public class DiscordEventListener extends ListenerAdapter {
     MessageChannel channel = e.getChannel();
     String channelId = channel.getId(),
         channelLink = String.format("https://discord.com/channels/%s/%s", guildId, gcpChannelId);
-    Role role = guild.getRoleById(Long.toString(gcpRoleId));
 
     if (e.getName().equals("fmc")) {
       String args1 = (e.getSubcommandName() != null) ? e.getSubcommandName() : null;
@@ -115,10 +102,49 @@ public class DiscordEventListener extends ListenerAdapter {
             return;
           }
 
+          OptionMapping instanceOption = e.getOption("instance");
+          Optional<InstanceTarget> resolved = gcp.resolveTarget(instanceOption != null ? instanceOption.getAsString() : null);
+          if (resolved.isEmpty()) {
+            messageAction = e.reply("指定されたインスタンスは監視対象ではありません。").setEphemeral(true);
+            messageAction.queue();
+            return;
+          }
+
+          // GCP.InstanceName以外のフリートのインスタンスは、状態機械の状態 (分からなければキャッシュされたステータス) で判断する (フリーズ検知はしない)
+          InstanceTarget target = resolved.get();
+          boolean running, freezing;
+          if (target.equals(gcp.getPrimaryTarget())) {
+            StatusSnapshot snapshot = statusHub.current();
+            running = snapshot.isRunning();
+            freezing = snapshot.isFreezing();
+          } else {
+            LifecycleStateMachine.State state = gcp.getLifecycleState(target);
+            running = state == LifecycleStateMachine.State.UNKNOWN
+                ? gcp.getCachedStatus(target).map("RUNNING"::equalsIgnoreCase).orElse(false)
+                : state == LifecycleStateMachine.State.RUNNING;
+            freezing = false;
+          }
+
           switch (gcpType.toLowerCase()) {
+            case "metrics" -> {
+              // 内部の計測値なので、GCPRoleIdを持つメンバーにだけ見せる
+              if (!hasGcpRole(member)) {
+                messageAction = e.reply("Metricsは許可されていません。").setEphemeral(true);
+                messageAction.queue();
+                return;
+              }
+
+              StringBuilder metrics = new StringBuilder("```\n");
+              Metrics.snapshot().forEach((name, value) -> metrics.append(name).append(" = ").append(value).append("\n"));
+              metrics.append("```");
+              // メッセージは2000文字まで
+              String content = metrics.length() > 2000 ? metrics.substring(0, 1996) + "\n```" : metrics.toString();
+              messageAction = e.reply(content).setEphemeral(true);
+              messageAction.queue();
+            }
             case "status" -> {
-              if (LoopStatus.isRunning.get()) {
-                if (LoopStatus.isFreezing.get()) {
+              if (running) {
+                if (freezing) {
                   messageAction = e.reply("インスタンスはフリーズしています。\nリセットしてください！").setEphemeral(false);
                   messageAction.queue();
                 } else {
@@ -131,20 +157,22 @@ public class DiscordEventListener extends ListenerAdapter {
               }
             }
             case "start" -> {
-              if (isInterval.get()) {
-                messageAction = e.reply("Start/Stop/Resetには" + commandPeriod + "秒以上間隔を空けてください。").setEphemeral(true);
+              // 同じ操作は実行中のものに合流し、別の操作の実行中は受け付けない
+              Optional<LifecycleStateMachine.Kind> inFlight = gcp.getInFlightOperation(target);
+              if (inFlight.isPresent() && inFlight.get() != LifecycleStateMachine.Kind.START) {
+                messageAction = e.reply(inFlight.get().label() + "の実行中のため、Startできません。").setEphemeral(true);
                 messageAction.queue();
                 return;
               }
 
-              if (!member.getRoles().contains(role)) {
+              if (!hasGcpRole(member)) {
                 messageAction = e.reply("Startは許可されていません。\nあなたはGCPサーバーがフリーズしているときのみサーバーをリセットできます。").setEphemeral(true);
                 messageAction.queue();
                 return;
               }
 
-              if (LoopStatus.isRunning.get()) {
-                if (LoopStatus.isFreezing.get()) {
+              if (running) {
+                if (freezing) {
                   messageAction = e.reply("インスタンスがフリーズしています。\n再起動する場合はコマンドを打ってください。").setEphemeral(true);
                   messageAction.queue();
                 } else {
@@ -152,153 +180,143 @@ public class DiscordEventListener extends ListenerAdapter {
                   messageAction.queue();
                 }
               } else {
+                if (!tryAcquire(e, member, "start")) {
+                  return;
+                }
+
+                // インタラクションを先に返し、以降は同じメッセージに進捗を追記する
+                String operationId = progress.begin(e, target, userMention + " インスタンスをスタートします。");
                 try {
-                  // インタラクションを先に返す。
-                  messageAction = e.reply(userMention + " インスタンスをスタートします。").setEphemeral(false);
-                  messageAction.queue(hook -> {
-                    hook.retrieveOriginal().queue(message -> {
-                      String messageId = message.getId();
-                      setFlagForOneMinute(messageId);
-                    });
-                  });
-
-                  // 以下、completefutureで完了時にメッセージIDをもって編集する
-                  gcp.startInstance().thenApply(success -> {
+                  // 以下、completefutureで完了時に操作IDをもって編集する
+                  gcp.startInstance(target).thenApply(success -> {
                     if (success) {
                       logger.info("start starting");
-                      editMessage(messageIds, channel, "\nスタートを実行中です。");
+                      progress.append(operationId, "\nスタートを実行中です。");
                       return true;
                     } else {
                       logger.error("failed start starting");
-                      editMessage(messageIds, channel, "\nスタートの実行に失敗しました。");
+                      progress.append(operationId, "\nスタートの実行に失敗しました。");
                       return false;
                     }
                   })
                       .thenAccept(result -> {
                         if (result) {
                           logger.info("successfully instance start");
-                          editMessage(messageIds, channel, "\nスタートが正常に実行されました。");
+                          progress.finish(operationId, "\nスタートが正常に実行されました。");
                         } else {
                           logger.error("failed instance start while executing");
-                          editMessage(messageIds, channel, "\nスタートの実行中にエラーが発生しました。");
+                          progress.finish(operationId, "\nスタートの実行中にエラーが発生しました。");
                         }
                       })
                       .exceptionally(ex -> {
                         logger.error("Start Error: " + ex.getMessage());
+                        progress.finish(operationId, "\n" + describeFailure(ex));
                         return null;
                       });
                 } catch (ApiException e1) {
                   logger.error("Discord command `gcp start` error: ", e1.getMessage(), e1);
-                  messageAction = e.reply(userMention + " インスタンスが停止している状態で、スタートに失敗しました。\nGCEのAPIエラー。")
-                      .setEphemeral(false);
-                  messageAction.queue();
+                  progress.finish(operationId, userMention + " インスタンスが停止している状態で、スタートに失敗しました。\nGCEのAPIエラー。");
                 }
               }
             }
             case "stop" -> {
-              if (isInterval.get()) {
-                messageAction = e.reply("Start/Stop/Resetには" + commandPeriod + "秒以上間隔を空けてください。").setEphemeral(true);
+              // 同じ操作は実行中のものに合流し、別の操作の実行中は受け付けない
+              Optional<LifecycleStateMachine.Kind> inFlight = gcp.getInFlightOperation(target);
+              if (inFlight.isPresent() && inFlight.get() != LifecycleStateMachine.Kind.STOP) {
+                messageAction = e.reply(inFlight.get().label() + "の実行中のため、Stopできません。").setEphemeral(true);
                 messageAction.queue();
                 return;
               }
 
-              if (!member.getRoles().contains(role)) {
+              if (!hasGcpRole(member)) {
                 messageAction = e.reply("Stopは許可されていません。\nあなたはGCPサーバーがフリーズしているときのみサーバーをリセットできます。").setEphemeral(true);
                 messageAction.queue();
                 return;
               }
 
-              if (LoopStatus.isRunning.get()) {
-                if (LoopStatus.isFreezing.get()) {
-                  try {
-                    // インタラクションを先に返す。
-                    messageAction = e.reply(userMention + " インスタンスがフリーズしています。\nインスタンスをストップしています。").setEphemeral(false);
-                    messageAction.queue(hook -> {
-                      hook.retrieveOriginal().queue(message -> {
-                        String messageId = message.getId();
-                        setFlagForOneMinute(messageId);
-                      });
-                    });
+              if (running) {
+                if (freezing) {
+                  if (!tryAcquire(e, member, "stop")) {
+                    return;
+                  }
 
-                    // 以下、completefutureで完了時にメッセージIDをもって編集する
-                    gcp.stopInstance().thenApply(success -> {
+                  // インタラクションを先に返し、以降は同じメッセージに進捗を追記する
+                  String operationId = progress.begin(e, target, userMention + " インスタンスがフリーズしています。\nインスタンスをストップしています。");
+                  try {
+                    // 以下、completefutureで完了時に操作IDをもって編集する
+                    gcp.stopInstance(target).thenApply(success -> {
                       if (success) {
                         logger.info("stop starting");
-                        editMessage(messageIds, channel, "\nストップを実行中です。");
+                        progress.append(operationId, "\nストップを実行中です。");
                         return true;
                       } else {
                         logger.error("failed stop starting");
-                        editMessage(messageIds, channel, "\nストップの実行に失敗しました。");
+                        progress.append(operationId, "\nストップの実行に失敗しました。");
                         return false;
                       }
                     })
                         .thenAccept(result -> {
                           if (result) {
                             logger.info("successfully instance stop");
-                            editMessage(messageIds, channel, "\nストップが正常に実行されました。");
+                            progress.finish(operationId, "\nストップが正常に実行されました。");
                           } else {
                             logger.error("failed instance stop while executing");
-                            editMessage(messageIds, channel, "\nストップの実行中にエラーが発生しました。");
+                            progress.finish(operationId, "\nストップの実行中にエラーが発生しました。");
                           }
                         })
                         .exceptionally(ex -> {
                           logger.error("Stop Error: " + ex.getMessage());
+                          progress.finish(operationId, "\n" + describeFailure(ex));
                           return null;
                         });
                   } catch (ApiException e1) {
                     logger.error("Discord command `gcp stop` error: ", e1.getMessage(), e1);
-                    messageAction = e.reply(userMention + " インスタンスがフリーズしている状態で、ストップに失敗しました。\nGCEのAPIエラー。")
-                        .setEphemeral(false);
-                    messageAction.queue();
+                    progress.finish(operationId, userMention + " インスタンスがフリーズしている状態で、ストップに失敗しました。\nGCEのAPIエラー。");
                   }
                 } else {
-                  if (!member.getRoles().contains(role)) {
+                  if (!hasGcpRole(member)) {
                     messageAction = e.reply("Stopは許可されていません。\nあなたはGCPサーバーがフリーズしているときのみサーバーをストップできます。")
                         .setEphemeral(true);
                     messageAction.queue();
                     return;
                   }
 
-                  try {
-                    // インタラクションを先に返す。
-                    messageAction = e.reply(userMention + " インスタンスをストップします。").setEphemeral(false);
-                    messageAction.queue(hook -> {
-                      hook.retrieveOriginal().queue(message -> {
-                        String messageId = message.getId();
-                        setFlagForOneMinute(messageId);
-                      });
-                    });
+                  if (!tryAcquire(e, member, "stop")) {
+                    return;
+                  }
 
-                    // 以下、completefutureで完了時にメッセージIDをもって編集する
-                    gcp.stopInstance().thenApply(success -> {
+                  // インタラクションを先に返し、以降は同じメッセージに進捗を追記する
+                  String operationId = progress.begin(e, target, userMention + " インスタンスをストップします。");
+                  try {
+                    // 以下、completefutureで完了時に操作IDをもって編集する
+                    gcp.stopInstance(target).thenApply(success -> {
                       if (success) {
                         logger.info("stop starting");
-                        editMessage(messageIds, channel, "\nストップを実行中です。");
+                        progress.append(operationId, "\nストップを実行中です。");
                         return true;
                       } else {
                         logger.error("failed stop starting");
-                        editMessage(messageIds, channel, "\nストップの実行に失敗しました。");
+                        progress.append(operationId, "\nストップの実行に失敗しました。");
                         return false;
                       }
                     })
                         .thenAccept(result -> {
                           if (result) {
                             logger.info("successfully instance stop");
-                            editMessage(messageIds, channel, "\nストップが正常に実行されました。");
+                            progress.finish(operationId, "\nストップが正常に実行されました。");
                           } else {
                             logger.error("failed instance stop while executing");
-                            editMessage(messageIds, channel, "\nストップの実行中にエラーが発生しました。");
+                            progress.finish(operationId, "\nストップの実行中にエラーが発生しました。");
                           }
                         })
                         .exceptionally(ex -> {
                           logger.error("Stop Error: " + ex.getMessage());
+                          progress.finish(operationId, "\n" + describeFailure(ex));
                           return null;
                         });
                   } catch (ApiException e1) {
                     logger.error("Discord command `gcp stop` error: ", e1.getMessage(), e1);
-                    messageAction = e.reply(userMention + " インスタンスが正常な状態で、ストップに失敗しました。\nGCEのAPIエラー。")
-                        .setEphemeral(false);
-                    messageAction.queue();
+                    progress.finish(operationId, userMention + " インスタンスが正常な状態で、ストップに失敗しました。\nGCEのAPIエラー。");
                   }
                 }
               } else {
@@ -307,103 +325,97 @@ public class DiscordEventListener extends ListenerAdapter {
               }
             }
             case "reset" -> {
-              if (isInterval.get()) {
-                messageAction = e.reply("Start/Stop/Resetには" + commandPeriod + "秒以上間隔を空けてください。").setEphemeral(true);
+              // 同じ操作は実行中のものに合流し、別の操作の実行中は受け付けない
+              Optional<LifecycleStateMachine.Kind> inFlight = gcp.getInFlightOperation(target);
+              if (inFlight.isPresent() && inFlight.get() != LifecycleStateMachine.Kind.RESET) {
+                messageAction = e.reply(inFlight.get().label() + "の実行中のため、Resetできません。").setEphemeral(true);
                 messageAction.queue();
                 return;
               }
 
-              if (LoopStatus.isRunning.get()) {
-                if (LoopStatus.isFreezing.get()) {
-                  try {
-                    // インタラクションを先に返す。
-                    messageAction = e.reply(userMention + " インスタンスがフリーズしています。").setEphemeral(false);
-                    messageAction.queue(hook -> {
-                      hook.retrieveOriginal().queue(message -> {
-                        String messageId = message.getId();
-                        setFlagForOneMinute(messageId);
-                      });
-                    });
+              if (running) {
+                if (freezing) {
+                  if (!tryAcquire(e, member, "reset")) {
+                    return;
+                  }
 
-                    // 以下、completefutureで完了時にメッセージIDをもって編集する
-                    gcp.resetInstance().thenApply(success -> {
+                  // インタラクションを先に返し、以降は同じメッセージに進捗を追記する
+                  String operationId = progress.begin(e, target, userMention + " インスタンスがフリーズしています。");
+                  try {
+                    // 以下、completefutureで完了時に操作IDをもって編集する
+                    gcp.resetInstance(target).thenApply(success -> {
                       if (success) {
                         logger.info("reset starting");
-                        editMessage(messageIds, channel, "\nリセットを実行中です。");
+                        progress.append(operationId, "\nリセットを実行中です。");
                         return true;
                       } else {
                         logger.error("failed reset starting");
-                        editMessage(messageIds, channel, "\nリセットの実行に失敗しました。");
+                        progress.append(operationId, "\nリセットの実行に失敗しました。");
                         return false;
                       }
                     })
                         .thenAccept(result -> {
                           if (result) {
                             logger.info("successfully instance reset");
-                            editMessage(messageIds, channel, "\nリセットが正常に実行されました。");
+                            progress.finish(operationId, "\nリセットが正常に実行されました。");
                           } else {
                             logger.error("failed instance reset while executing");
-                            editMessage(messageIds, channel, "\nリセットの実行中にエラーが発生しました。");
+                            progress.finish(operationId, "\nリセットの実行中にエラーが発生しました。");
                           }
                         })
                         .exceptionally(ex -> {
                           logger.error("Reset Error: " + ex.getMessage());
+                          progress.finish(operationId, "\n" + describeFailure(ex));
                           return null;
                         });
                   } catch (ApiException e1) {
                     logger.error("Discord command `gcp reset` error: ", e1.getMessage(), e1);
-                    messageAction = e.reply(userMention + " インスタンスがフリーズしている状態で、リセットに失敗しました。\nGCEのAPIエラー。")
-                        .setEphemeral(false);
-                    messageAction.queue();
+                    progress.finish(operationId, userMention + " インスタンスがフリーズしている状態で、リセットに失敗しました。\nGCEのAPIエラー。");
                   }
                 } else {
-                  if (!member.getRoles().contains(role)) {
+                  if (!hasGcpRole(member)) {
                     messageAction = e.reply("Resetは許可されていません。\nあなたはGCPサーバーがフリーズしているときのみサーバーをリセットできます。")
                         .setEphemeral(true);
                     messageAction.queue();
                     return;
                   }
 
-                  try {
-                    // インタラクションを先に返す。
-                    messageAction = e.reply(userMention + " インスタンスをリセットしています。").setEphemeral(false);
-                    messageAction.queue(hook -> {
-                      hook.retrieveOriginal().queue(message -> {
-                        String messageId = message.getId();
-                        setFlagForOneMinute(messageId);
-                      });
-                    });
+                  if (!tryAcquire(e, member, "reset")) {
+                    return;
+                  }
 
-                    // 以下、completefutureで完了時にメッセージIDをもって編集する
-                    gcp.resetInstance().thenApply(success -> {
+                  // インタラクションを先に返し、以降は同じメッセージに進捗を追記する
+                  String operationId = progress.begin(e, target, userMention + " インスタンスをリセットしています。");
+                  try {
+                    // 以下、completefutureで完了時に操作IDをもって編集する
+                    gcp.resetInstance(target).thenApply(success -> {
                       if (success) {
                         logger.info("reset starting");
-                        editMessage(messageIds, channel, "\nリセットを実行中です。");
+                        progress.append(operationId, "\nリセットを実行中です。");
                         return true;
                       } else {
                         logger.error("failed reset starting");
-                        editMessage(messageIds, channel, "\nリセットの実行に失敗しました。");
+                        progress.append(operationId, "\nリセットの実行に失敗しました。");
                         return false;
                       }
                     })
                         .thenAccept(result -> {
                           if (result) {
                             logger.info("successfully instance reset");
-                            editMessage(messageIds, channel, "\nリセットが正常に実行されました。");
+                            progress.finish(operationId, "\nリセットが正常に実行されました。");
                           } else {
                             logger.error("failed instance reset while executing");
-                            editMessage(messageIds, channel, "\nリセットの実行中にエラーが発生しました。");
+                            progress.finish(operationId, "\nリセットの実行中にエラーが発生しました。");
                           }
                         })
                         .exceptionally(ex -> {
                           logger.error("Reset Error: " + ex.getMessage());
+                          progress.finish(operationId, "\n" + describeFailure(ex));
                           return null;
                         });
                   } catch (ApiException e1) {
                     logger.error("Discord command `gcp reset` error: ", e1.getMessage(), e1);
-                    messageAction = e.reply(userMention + " インスタンスが正常な状態で、リセットに失敗しました。\nGCEのAPIエラー。")
-                        .setEphemeral(false);
-                    messageAction.queue();
+                    progress.finish(operationId, userMention + " インスタンスが正常な状態で、リセットに失敗しました。\nGCEのAPIエラー。");
                   }
                 }
               } else {
@@ -418,14 +430,30 @@ public class DiscordEventListener extends ListenerAdapter {
     }
   }
 
-  private void editMessage(List<String> allMessageIds, MessageChannel messageChannel, String newContent) {
-    for (String getMessageId : allMessageIds) {
-      if (messageChannel != null) {
-        Message message = messageChannel.retrieveMessageById(getMessageId).complete();
-        String content = message.getContentRaw();
-        content += "\n" + newContent;
-        message.editMessage(content).queue();
-      }
+  // ロールをギルドのキャッシュから引かず、インタラクションのメンバーが持つロールのIDで判定する
+  private boolean hasGcpRole(Member member) {
+    return member.getRoles().stream().anyMatch(memberRole -> memberRole.getIdLong() == gcpRoleId);
+  }
+
+  // 操作を開始する前に、ユーザー・ロール・操作ごとのトークンを1つ消費する (足りなければ待ち時間を返信する)
+  private boolean tryAcquire(SlashCommandInteractionEvent e, Member member, String action) {
+    String roleId = hasGcpRole(member) ? Long.toString(gcpRoleId) : null;
+    CommandRateLimiter.Decision decision = limiter.tryAcquire(member.getId(), roleId, action);
+    if (!decision.allowed()) {
+      e.reply("Start/Stop/Resetには間隔を空けてください。\nあと" + (decision.retryAfterMillis() / 1000 + 1) + "秒お待ちください。")
+          .setEphemeral(true).queue();
+    }
+    return decision.allowed();
+  }
+
+  private String describeFailure(Throwable ex) {
+    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    if (cause instanceof LifecycleStateMachine.ConflictException conflict) {
+      return conflict.getInFlight()
+          .map(kind -> kind.label() + "の実行中のため、実行できませんでした。")
+          .orElse("インスタンスが" + conflict.getState() + "のため、実行できませんでした。");
     }
+
+    return "実行中にエラーが発生しました。";
   }
 }
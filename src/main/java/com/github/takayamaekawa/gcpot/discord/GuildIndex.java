@@ -0,0 +1,170 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+
+/**
+ * ギルドごとのステータスメッセージの設定を、起動時に1回だけコンフィグから読み込んだ索引
+ * (更新のたびにYAMLの木をたどらない)
+ * 
+ * Discord.Guilds.<ギルドID>.ChannelId/MessageIdを読み、なければDiscord.Status.ChannelId/MessageIdを
+ * ギルド不明 (guildId=0) の1件として扱う
+ * ステータスボードの2ページ目以降のメッセージはPageMessageIdsで指定できる
+ * 
+ * 作り直した・増やしたメッセージのIDはconfig.ymlではなく、データディレクトリのstatus-messages.propertiesに保存する
+ * (config.ymlを書き戻すとコメントや並び順が失われるため)
+ */
+public class GuildIndex {
+  private static final String STATE_FILE = "status-messages.properties";
+  private final Logger logger;
+  private final Path stateFile;
+  private final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+  /**
+   * @param guildId    ギルドID (0はギルド不明)
+   * @param channelId  ステータスメッセージのチャンネルID
+   * @param messageIds ステータスボードの各ページのメッセージID (先頭がMessageId)
+   */
+  public record Entry(long guildId, long channelId, List<Long> messageIds) {
+  }
+
+  @Inject
+  public GuildIndex(Logger logger, Config config) {
+    this.logger = logger;
+    this.stateFile = config.getDataDirectory().resolve(STATE_FILE);
+
+    if (config.getNestedValue("Discord.Guilds") instanceof Map<?, ?> guilds) {
+      guilds.forEach((key, value) -> {
+        if (!(value instanceof Map<?, ?> guild)) {
+          return;
+        }
+
+        try {
+          long guildId = Long.parseLong(String.valueOf(key));
+          long channelId = guild.get("ChannelId") instanceof Number number ? number.longValue() : 0;
+          long messageId = guild.get("MessageId") instanceof Number number ? number.longValue() : 0;
+          if (channelId != 0 && messageId != 0) {
+            entries.put(guildId, new Entry(guildId, channelId, withPages(messageId, guild.get("PageMessageIds"))));
+          }
+        } catch (NumberFormatException e) {
+          logger.error("Invalid guild id in Discord.Guilds: " + key);
+        }
+      });
+    }
+
+    if (entries.isEmpty()) {
+      long channelId = config.getLong("Discord.Status.ChannelId", 0);
+      long messageId = config.getLong("Discord.Status.MessageId", 0);
+      if (channelId != 0 && messageId != 0) {
+        entries.put(0L, new Entry(0, channelId, withPages(messageId, config.getNestedValue("Discord.Status.PageMessageIds"))));
+      }
+    }
+
+    loadState();
+  }
+
+  // 保存済みのメッセージIDがあれば、コンフィグの値より優先する
+  private void loadState() {
+    if (!Files.exists(stateFile)) {
+      return;
+    }
+
+    Properties state = new Properties();
+    try (Reader reader = Files.newBufferedReader(stateFile)) {
+      state.load(reader);
+    } catch (IOException e) {
+      logger.error("Failed to load " + STATE_FILE + ": " + e.getMessage());
+      return;
+    }
+
+    entries.replaceAll((guildId, entry) -> {
+      String saved = state.getProperty(Long.toString(guildId));
+      if (saved == null || saved.isBlank()) {
+        return entry;
+      }
+
+      try {
+        List<Long> messageIds = Arrays.stream(saved.split(",")).map(String::trim).map(Long::parseLong).toList();
+        return new Entry(guildId, entry.channelId(), messageIds);
+      } catch (NumberFormatException e) {
+        logger.error("Invalid message ids in " + STATE_FILE + ": " + guildId + "=" + saved);
+        return entry;
+      }
+    });
+  }
+
+  private static List<Long> withPages(long messageId, Object pages) {
+    List<Long> messageIds = new ArrayList<>();
+    messageIds.add(messageId);
+    if (pages instanceof List<?> list) {
+      list.stream().filter(Number.class::isInstance).map(id -> ((Number) id).longValue()).forEach(messageIds::add);
+    }
+    return List.copyOf(messageIds);
+  }
+
+  public synchronized List<Entry> getEntries() {
+    return List.copyOf(entries.values());
+  }
+
+  public synchronized Optional<Entry> get(long guildId) {
+    return Optional.ofNullable(entries.get(guildId));
+  }
+
+  public synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * ステータスメッセージを作り直した・ページを増やしたときに、新しいIDを索引とstatus-messages.propertiesに保存する
+   * 
+   * @param page 0始まりのページ番号 (ページ数と同じ値なら末尾に追加する)
+   */
+  public synchronized void updateMessageId(long guildId, int page, long messageId) {
+    Entry entry = entries.get(guildId);
+    if (entry == null || page > entry.messageIds().size()) {
+      return;
+    }
+
+    List<Long> messageIds = new ArrayList<>(entry.messageIds());
+    if (page == messageIds.size()) {
+      messageIds.add(messageId);
+    } else {
+      messageIds.set(page, messageId);
+    }
+    entries.put(guildId, new Entry(guildId, entry.channelId(), List.copyOf(messageIds)));
+
+    Properties state = new Properties();
+    entries.forEach((id, saved) -> state.setProperty(Long.toString(id),
+        saved.messageIds().stream().map(String::valueOf).collect(Collectors.joining(","))));
+
+    // 書き込み途中で止まっても壊れたファイルが残らないように、一時ファイルから置き換える
+    try {
+      Path temp = stateFile.resolveSibling(STATE_FILE + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temp)) {
+        state.store(writer, "status message ids (guildId=messageId,pageMessageId...)");
+      }
+      Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      logger.info("新しいステータスメッセージのIDを保存しました: " + messageId);
+    } catch (IOException e) {
+      logger.error("Failed to save status message id: " + e.getMessage());
+    }
+  }
+}
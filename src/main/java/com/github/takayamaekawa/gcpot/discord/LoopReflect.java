@@ -1,55 +1,91 @@
 package com.github.takayamaekawa.gcpot.discord;
 
 import java.awt.Color;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.security.auth.login.LoginException;
 
 import org.slf4j.Logger;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
 
 import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import com.github.takayamaekawa.gcpot.common.StatusHub;
+import com.github.takayamaekawa.gcpot.common.StatusSnapshot;
+import com.github.takayamaekawa.gcpot.common.TickScheduler;
 import com.github.takayamaekawa.gcpot.gcp.InstanceManager;
-import com.github.takayamaekawa.gcpot.gcp.LoopStatus;
 import com.github.takayamaekawa.gcpot.mysql.Database;
+import com.github.takayamaekawa.gcpot.nongcp.InstanceManager.ServerStatus;
+import com.github.takayamaekawa.gcpot.probe.ServerListPing;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 
 public class LoopReflect {
   private final Logger logger;
   private final Config config;
   private final Database db;
   private final InstanceManager gcp;
+  private final com.github.takayamaekawa.gcpot.nongcp.InstanceManager nongcp;
   private final Discord discord;
+  private final TickScheduler scheduler;
+  private final StatusHub statusHub;
+  private final UpdateGate gate;
+  private final UpdateQueue queue;
   private final int period;
-  private final Long channelId, messageId;
-  private final boolean require;
+  private final long jitter;
+  private final GuildIndex guildIndex;
+  private volatile DatabaseView databaseView = null;
+
+  // statusテーブルのうち、表示に使う列だけを取る (並び順は以前のSELECT *と同じくテーブルの順のまま)
+  private static final String STATUS_QUERY = "SELECT name, online, current_players, player_list FROM status";
+
+  /**
+   * 前回statusテーブルから描画した結果
+   */
+  private record DatabaseView(String ip, long fingerprint, boolean maintenance, boolean online, List<Field> fields) {
+    private record Row(String name, boolean online, int currentPlayers, String playerList) {
+    }
+
+    private record Field(String name, String value) {
+    }
+  }
 
   @Inject
-  public LoopReflect(Logger logger, Config config, Database db, InstanceManager gcp, Discord discord)
-      throws LoginException {
+  public LoopReflect(Logger logger, Config config, Database db, InstanceManager gcp,
+      com.github.takayamaekawa.gcpot.nongcp.InstanceManager nongcp, Discord discord, TickScheduler scheduler,
+      StatusHub statusHub, UpdateGate gate, UpdateQueue queue, GuildIndex guildIndex) throws LoginException {
     this.logger = logger;
     this.config = config;
     this.db = db;
     this.gcp = gcp;
+    this.nongcp = nongcp;
     this.discord = discord;
+    this.scheduler = scheduler;
+    this.statusHub = statusHub;
+    this.gate = gate;
+    this.queue = queue;
     this.period = config.getInt("Discord.Status.Period", 20);
-    this.channelId = config.getLong("Discord.Status.ChannelId", 0);
-    this.messageId = config.getLong("Discord.Status.MessageId", 0);
-    this.require = channelId != 0 && messageId != 0;
+    this.jitter = config.getLong("Discord.Status.Jitter", 500);
+    this.guildIndex = guildIndex;
   }
 
   public void start() {
-    if (!require) {
+    if (guildIndex.isEmpty()) {
       logger.info("コンフィグの設定が不十分なため、ステータスをUPDATEできません。");
       return;
     }
@@ -59,126 +95,258 @@ public class LoopReflect {
       return;
     }
 
-    Timer timer = new Timer();
-    timer.schedule(new TimerTask() {
-      @Override
-      public void run() {
-        updateStatus();
-      }
-    }, 0, 1000 * period);
+    // プレイヤー数などのために定期的に反映しつつ、状態が変化したら次のtickを待たずにすぐ反映する
+    TickScheduler.Job job = scheduler.scheduleAtFixedRate("discord.reflect", 1000L * period, jitter, this::updateStatus);
+    statusHub.subscribe(snapshot -> job.trigger());
   }
 
   public void sendEmbedMessage() {
-    TextChannel channel = discord.getJDA().getTextChannelById(channelId);
     EmbedBuilder embed = new EmbedBuilder().setTitle("This message is going to be edited").setColor(Color.GREEN);
-    if (channel != null) {
-      channel.sendMessageEmbeds(embed.build()).queue(
-          success -> logger.info("Embed sent successfully!"),
-          error -> logger.error("Failed to send embed: " + error.getMessage()));
+    for (GuildIndex.Entry entry : guildIndex.getEntries()) {
+      TextChannel channel = discord.getTextChannel(entry.guildId(), entry.channelId());
+      if (channel != null) {
+        channel.sendMessageEmbeds(embed.build()).queue(
+            success -> logger.info("Embed sent successfully!"),
+            error -> logger.error("Failed to send embed: " + error.getMessage()));
+      }
     }
   }
 
-  private void updateStatus() {
+  private CompletableFuture<Void> updateStatus() {
     if (Objects.isNull(discord.getJDA())) {
       logger.error("jdaがnullです。");
-      return;
+      return CompletableFuture.completedFuture(null);
     }
 
-    TextChannel channel = discord.getJDA().getTextChannelById(channelId);
-    EmbedBuilder embed = new EmbedBuilder();
+    StatusBoard embed = new StatusBoard();
     if (config.getBoolean("GCP.Mode")) {
-      if (LoopStatus.isRunning.get()) {
-        if (LoopStatus.isFreezing.get()) {
+      StatusSnapshot snapshot = statusHub.current();
+      if (snapshot.isRunning()) {
+        if (snapshot.isFreezing()) {
           embed.setTitle(":negative_squared_cross_mark: インスタンスがフリーズしています！\n/fmc gcp resetを実行してください。")
               .setColor(Color.YELLOW);
-          if (channel != null) {
-            Message message = channel.retrieveMessageById(messageId).complete();
-            message.editMessageEmbeds(embed.build()).queue();
-          }
-          return;
+          return publishStatus(embed);
         }
       } else {
         embed.setTitle(":negative_squared_cross_mark: インスタンスは現在停止しています。").setColor(Color.RED);
-        if (channel != null) {
-          Message message = channel.retrieveMessageById(messageId).complete();
-          message.editMessageEmbeds(embed.build()).queue();
-        }
-        return;
+        return publishStatus(embed);
       }
-      gcp.getStaticAddress().thenApply(internalIp -> {
+      return gcp.getStaticAddress().thenApply(internalIp -> {
         if (internalIp != null) {
           return internalIp;
         } else {
           return null;
         }
-      }).thenAccept(result -> {
-        reflectDatabase(result, embed, channel);
+      }).thenCompose(result -> {
+        return reflectDatabase(result, embed);
+      }).exceptionally(ex -> {
+        logger.error("LoopReflect error: " + ex.getMessage());
+        return null;
+      });
+    } else if (!nongcp.getServers().isEmpty()) {
+      // データベースを経由せず、Server List Pingの結果をそのまま反映する
+      return nongcp.pingServers().thenCompose(statuses -> {
+        return reflectServerList(statuses, embed);
       }).exceptionally(ex -> {
         logger.error("LoopReflect error: " + ex.getMessage());
         return null;
       });
     } else {
       String localIP = config.getString("Minecraft.LocalIP", "localhost");
-      reflectDatabase(localIP, embed, channel);
+      return reflectDatabase(localIP, embed);
     }
   }
 
-  public void reflectDatabase(String ip, EmbedBuilder embed, TextChannel channel) {
-    try {
-      Connection conn = db.getConnection(ip);
-      if (conn == null) {
-        throw new SQLException("データベースサーバへの接続に失敗しました");
+  /**
+   * 索引にある全ギルドのステータスボードを、担当シャードから更新する
+   * ページごとに指紋を比べるため、内容が変わったページだけが編集される
+   */
+  private CompletableFuture<Void> publishStatus(StatusBoard board) {
+    List<MessageEmbed> pages = board.build();
+    Metrics.gauge("discord.status.pages", pages::size);
+    return CompletableFuture.allOf(guildIndex.getEntries().stream()
+        .map(entry -> publishPages(entry, pages))
+        .toArray(CompletableFuture[]::new));
+  }
+
+  // ページの順番を保つため、ギルドごとに1ページずつ順に更新する
+  // 途中のページを送れなかった場合は、後ろのページだけが新しいメッセージになって順番がずれないように、そこで止めて次のtickでやり直す
+  private CompletableFuture<Boolean> publishPages(GuildIndex.Entry entry, List<MessageEmbed> pages) {
+    TextChannel channel = discord.getTextChannel(entry.guildId(), entry.channelId());
+    if (channel == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+
+    CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(true);
+    int pageCount = Math.max(pages.size(), entry.messageIds().size());
+    for (int i = 0; i < pageCount; i++) {
+      int page = i;
+      // ページが減った場合、余ったメッセージは消さずに空のページにして次に増えたときに使う
+      MessageEmbed embed = page < pages.size() ? pages.get(page) : StatusBoard.emptyPage();
+      chain = chain.thenCompose(ok -> !ok ? CompletableFuture.completedFuture(false)
+          : page < entry.messageIds().size()
+              ? editStatusMessage(entry, channel, page, embed)
+              : sendStatusMessage(entry, channel, page, embed));
+    }
+    return chain;
+  }
+
+  /**
+   * ステータスメッセージをIDで直接編集する (事前のGETはしない)
+   * メッセージが削除されていた場合だけ、新しく送信してそのIDをコンフィグに保存する
+   * 前回送った内容と同じであれば何もしない
+   * 
+   * @return 失敗した場合false
+   */
+  private CompletableFuture<Boolean> editStatusMessage(GuildIndex.Entry entry, TextChannel channel, int page,
+      MessageEmbed embed) {
+    long messageId = entry.messageIds().get(page);
+    String key = "status:" + messageId;
+    if (!gate.tryAcquire("embed", key, embed.toData().toString())) {
+      return CompletableFuture.completedFuture(true);
+    }
+
+    // 同じメッセージへの編集が詰まっている場合は、最新の内容だけが送られる
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    queue.submit(key, channel.editMessageEmbedsById(messageId, embed)).whenComplete((sent, error) -> {
+      if (error == null) {
+        future.complete(true);
+        return;
       }
 
-      try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM status");
-          ResultSet rs = ps.executeQuery()) {
-
-        boolean maintenance = false;
-        boolean isOnline = false;
-        while (rs.next()) {
-          String name = rs.getString("name");
-          boolean online = rs.getBoolean("online");
-
-          if (name.equals("maintenance") && online) {
-            maintenance = true;
-            break;
-          }
-
-          if (online) {
-            isOnline = true;
-            String playerList = rs.getString("player_list");
-            int currentPlayers = rs.getInt("current_players");
-            if (playerList == null || playerList.isEmpty()) {
-              embed.addField(":green_circle: " + name, currentPlayers + "/10: No Player", false);
-            } else {
-              if (playerList.equals("") || playerList.equals("None")) {
-                embed.addField(":green_circle: " + name, currentPlayers + "/10: No Player", false);
-              } else {
-                embed.addField(":green_circle: " + name, currentPlayers + "/10: " + playerList, false);
-              }
-            }
-          }
-        }
+      gate.forget(key);
+      if (error instanceof ErrorResponseException e && e.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+        logger.info("ステータスメッセージが見つからないため、新しく送信します。");
+        sendStatusMessage(entry, channel, page, embed).thenAccept(future::complete);
+      } else {
+        logger.error("Failed to edit status message: " + error.getMessage());
+        future.complete(false);
+      }
+    });
+    return future;
+  }
 
-        if (maintenance) {
-          embed.setTitle(":red_circle: 現在サーバーメンテナンス中");
-          embed.setColor(Color.RED);
-        } else if (!isOnline) {
-          embed.setTitle(":red_circle: すべてのサーバーがオフライン");
-          embed.setColor(Color.RED);
-        } else {
-          embed.setColor(Color.GREEN);
-        }
+  private CompletableFuture<Boolean> sendStatusMessage(GuildIndex.Entry entry, TextChannel channel, int page,
+      MessageEmbed embed) {
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    channel.sendMessageEmbeds(embed).queue(
+        message -> {
+          gate.tryAcquire("embed", "status:" + message.getIdLong(), embed.toData().toString());
+          guildIndex.updateMessageId(entry.guildId(), page, message.getIdLong());
+          future.complete(true);
+        },
+        error -> {
+          logger.error("Failed to send status message: " + error.getMessage());
+          future.complete(false);
+        });
+    return future;
+  }
+
+  public CompletableFuture<Void> reflectServerList(List<ServerStatus> statuses, StatusBoard embed) {
+    boolean isOnline = false;
+    for (ServerStatus status : statuses) {
+      ServerListPing.Result result = status.result();
+      if (!result.online()) {
+        continue;
+      }
+
+      isOnline = true;
+      String playerList = String.join(", ", result.sample());
+      embed.addField(":green_circle: " + status.server().name(), result.onlinePlayers() + "/" + result.maxPlayers()
+          + ": " + (playerList.isEmpty() ? "No Player" : playerList));
+    }
+
+    if (!isOnline) {
+      embed.setTitle(":red_circle: すべてのサーバーがオフライン");
+      embed.setColor(Color.RED);
+    } else {
+      embed.setColor(Color.GREEN);
+    }
+
+    return publishStatus(embed);
+  }
+
+  public CompletableFuture<Void> reflectDatabase(String ip, StatusBoard embed) {
+    // 接続の貸し出しとクエリは仮想スレッドで行い、呼び出し元のスレッドをブロックしない
+    return db.withConnectionAsync(ip, conn -> loadDatabaseView(conn, ip)).thenCompose(view -> {
+      view.fields().forEach(field -> embed.addField(field.name(), field.value()));
+      if (view.maintenance()) {
+        embed.setTitle(":red_circle: 現在サーバーメンテナンス中");
+        embed.setColor(Color.RED);
+      } else if (!view.online()) {
+        embed.setTitle(":red_circle: すべてのサーバーがオフライン");
+        embed.setColor(Color.RED);
+      } else {
+        embed.setColor(Color.GREEN);
+      }
+
+      return publishStatus(embed);
+    }).exceptionally(ex -> {
+      Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+      if (cause instanceof SQLException || cause instanceof ClassNotFoundException) {
+        // logger.error("Error occurred while updateStatus method: ", e.getMessage(),
+        // e);
+        logger.info("MySQLサーバーに再接続を試みています。");
+      } else {
+        logger.error("LoopReflect error: " + cause.getMessage());
+      }
+      return null;
+    });
+  }
+
+  // 行数とチェックサムが前回と同じなら、行を取り直さずに前回の描画結果を使う
+  private DatabaseView loadDatabaseView(Connection conn, String ip) throws SQLException {
+    // 取得した行を取得順のまま (=表示順) ハッシュし、前回と同じなら描画し直さずに前回の結果を使う
+    List<DatabaseView.Row> rows = new ArrayList<>();
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try (PreparedStatement ps = conn.prepareStatement(STATUS_QUERY);
+        ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        DatabaseView.Row row = new DatabaseView.Row(rs.getString("name"), rs.getBoolean("online"),
+            rs.getInt("current_players"), rs.getString("player_list"));
+        hasher.putString(String.valueOf(row.name()), StandardCharsets.UTF_8).putBoolean(row.online())
+            .putInt(row.currentPlayers()).putBoolean(row.playerList() != null)
+            .putString(String.valueOf(row.playerList()), StandardCharsets.UTF_8);
+        rows.add(row);
+      }
+    }
+
+    long fingerprint = hasher.putInt(rows.size()).hash().asLong();
+    DatabaseView view = databaseView;
+    if (view != null && view.ip().equals(ip) && view.fingerprint() == fingerprint) {
+      Metrics.increment("mysql.status.cached");
+      return view;
+    }
 
-        if (channel != null) {
-          Message message = channel.retrieveMessageById(messageId).complete();
-          message.editMessageEmbeds(embed.build()).queue();
+    view = renderDatabaseView(ip, fingerprint, rows);
+    databaseView = view;
+    Metrics.increment("mysql.status.fetched");
+    return view;
+  }
+
+  private DatabaseView renderDatabaseView(String ip, long fingerprint, List<DatabaseView.Row> rows) {
+    List<DatabaseView.Field> fields = new ArrayList<>();
+    boolean isOnline = false;
+    for (DatabaseView.Row row : rows) {
+      String name = row.name();
+      if (name.equals("maintenance") && row.online()) {
+        return new DatabaseView(ip, fingerprint, true, isOnline, List.copyOf(fields));
+      }
+
+      if (row.online()) {
+        isOnline = true;
+        String playerList = row.playerList();
+        int currentPlayers = row.currentPlayers();
+        if (playerList == null || playerList.isEmpty() || playerList.equals("None")) {
+          fields.add(new DatabaseView.Field(":green_circle: " + name, currentPlayers + "/10: No Player"));
+        } else {
+          fields.add(new DatabaseView.Field(":green_circle: " + name, currentPlayers + "/10: " + playerList));
         }
       }
-    } catch (SQLException | ErrorResponseException | ClassNotFoundException e) {
-      // logger.error("Error occurred while updateStatus method: ", e.getMessage(),
-      // e);
-      logger.info("MySQLサーバーに再接続を試みています。");
     }
+
+    return new DatabaseView(ip, fingerprint, false, isOnline, List.copyOf(fields));
   }
+
+
 }
@@ -0,0 +1,66 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.StatusHub;
+import com.github.takayamaekawa.gcpot.common.StatusSnapshot;
+import com.github.takayamaekawa.gcpot.common.TickScheduler;
+import net.dv8tion.jda.api.entities.Activity;
+
+/**
+ * 状態が変化したときだけBotのプレゼンスを更新する
+ */
+public class PresenceUpdater {
+  private final Config config;
+  private final Discord discord;
+  private final StatusHub statusHub;
+  private final UpdateGate gate;
+  private final TickScheduler scheduler;
+
+  @Inject
+  public PresenceUpdater(Config config, Discord discord, StatusHub statusHub, UpdateGate gate,
+      TickScheduler scheduler) {
+    this.config = config;
+    this.discord = discord;
+    this.statusHub = statusHub;
+    this.gate = gate;
+    this.scheduler = scheduler;
+  }
+
+  public void start() {
+    statusHub.subscribe(this::update);
+
+    // 取りこぼしに備えて、ForceRefresh秒ごとに同じ内容でも送り直す
+    scheduler.scheduleAtFixedRate("discord.presence", gate.getForceRefreshMillis(), 0, () -> {
+      StatusSnapshot snapshot = statusHub.current();
+      if (snapshot.isConfirmed()) {
+        update(snapshot);
+      }
+      return CompletableFuture.completedFuture(null);
+    });
+  }
+
+  private void update(StatusSnapshot snapshot) {
+    if (Objects.isNull(discord.getJDA())) {
+      return;
+    }
+
+    String activityStatus = switch (snapshot.state()) {
+      case RUNNING -> config.getString("Discord.Presence.Activity.Running", "v1-Running");
+      case FREEZING -> config.getString("Discord.Presence.Activity.Freezing", "v1-Freezing!");
+      case STOPPED -> config.getString("Discord.Presence.Activity.Stopping", "v1-Stopping");
+    };
+    Objects.requireNonNull(activityStatus);
+    if (!gate.tryAcquire("presence", "presence", activityStatus)) {
+      return;
+    }
+
+    // プレゼンスはシャードごとのゲートウェイ接続に属するので、各シャードへ送る
+    // setActivityは送信の完了を返さないのでUpdateQueueでは待てない (状態が変わったときだけ呼ばれ、同じ内容はUpdateGateで省く)
+    discord.getShards().forEach(shard -> shard.getPresence().setActivity(Activity.playing(activityStatus)));
+  }
+}
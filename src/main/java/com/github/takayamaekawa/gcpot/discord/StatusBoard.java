@@ -0,0 +1,103 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+/**
+ * サーバーごとのステータスを、Discordの埋め込みの上限 (25フィールド, 合計6000文字, 値1024文字) に収まるように
+ * 複数ページ (1ページ = 1メッセージの埋め込み1つ) へ分けて描画する
+ */
+public class StatusBoard {
+  private static final int MAX_FIELDS = 25;
+  // タイトルとページ番号のフッターの分を残しておく
+  private static final int PAGE_BUDGET = MessageEmbed.EMBED_MAX_LENGTH_BOT - MessageEmbed.TITLE_MAX_LENGTH - 32;
+  private final List<MessageEmbed.Field> fields = new ArrayList<>();
+  private String title = null;
+  private Color color = null;
+
+  public StatusBoard setTitle(String title) {
+    this.title = title;
+    return this;
+  }
+
+  public StatusBoard setColor(Color color) {
+    this.color = color;
+    return this;
+  }
+
+  /**
+   * 1サーバー分のフィールドを追加する (値が長すぎる場合は ", " の区切りで続きのフィールドに分ける)
+   */
+  public StatusBoard addField(String name, String value) {
+    String fieldName = truncate(name, MessageEmbed.TITLE_MAX_LENGTH);
+    String rest = value.isEmpty() ? "-" : value;
+    boolean first = true;
+    while (!rest.isEmpty()) {
+      String chunk = rest;
+      if (chunk.length() > MessageEmbed.VALUE_MAX_LENGTH) {
+        int cut = chunk.lastIndexOf(", ", MessageEmbed.VALUE_MAX_LENGTH - 2);
+        chunk = chunk.substring(0, cut > 0 ? cut : MessageEmbed.VALUE_MAX_LENGTH);
+      }
+
+      rest = rest.substring(chunk.length());
+      if (rest.startsWith(", ")) {
+        rest = rest.substring(2);
+      }
+
+      fields.add(new MessageEmbed.Field(first ? fieldName : truncate(fieldName + " (続き)", MessageEmbed.TITLE_MAX_LENGTH),
+          chunk, false));
+      first = false;
+    }
+    return this;
+  }
+
+  /**
+   * ページに分けて埋め込みを作る (フィールドがなくても1ページは返す)
+   */
+  public List<MessageEmbed> build() {
+    List<List<MessageEmbed.Field>> pages = new ArrayList<>();
+    List<MessageEmbed.Field> page = new ArrayList<>();
+    int length = 0;
+    for (MessageEmbed.Field field : fields) {
+      int fieldLength = field.getName().length() + field.getValue().length();
+      if (!page.isEmpty() && (page.size() >= MAX_FIELDS || length + fieldLength > PAGE_BUDGET)) {
+        pages.add(page);
+        page = new ArrayList<>();
+        length = 0;
+      }
+
+      page.add(field);
+      length += fieldLength;
+    }
+    pages.add(page);
+
+    List<MessageEmbed> embeds = new ArrayList<>();
+    for (int i = 0; i < pages.size(); i++) {
+      EmbedBuilder embed = new EmbedBuilder().setTitle(title).setColor(color);
+      pages.get(i).forEach(embed::addField);
+      if (pages.size() > 1) {
+        embed.setFooter((i + 1) + "/" + pages.size());
+      }
+      if (embed.isEmpty()) {
+        embed.setDescription("-");
+      }
+      embeds.add(embed.build());
+    }
+    return embeds;
+  }
+
+  /**
+   * 使われなくなったページに表示する埋め込み
+   */
+  public static MessageEmbed emptyPage() {
+    return new EmbedBuilder().setDescription("-").build();
+  }
+
+  private static String truncate(String text, int max) {
+    return text.length() > max ? text.substring(0, max - 1) + "…" : text;
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * 最後に実際に送った埋め込み・プレゼンスの指紋を覚えておき、同じ内容の更新を捨てる
+ * (ForceRefresh秒が経過したら、同じ内容でも念のため送り直す)
+ */
+public class UpdateGate {
+  private final Map<String, Sent> sent = new ConcurrentHashMap<>();
+  private final long forceRefreshMillis;
+
+  private record Sent(long fingerprint, long sentAt) {
+  }
+
+  @Inject
+  public UpdateGate(Config config) {
+    this.forceRefreshMillis = config.getLong("Discord.Output.ForceRefresh", 600) * 1000;
+    Metrics.gauge("discord.output.tracked", sent::size);
+  }
+
+  /**
+   * 送るべき更新かどうかを判定し、送る場合はその指紋を記録する
+   * 
+   * @param kind    メトリクスの分類 (embed, presenceなど)
+   * @param key     更新先 (メッセージIDなど)
+   * @param payload 送る内容
+   * @return 送る必要がある場合true
+   */
+  public boolean tryAcquire(String kind, String key, String payload) {
+    long fingerprint = Hashing.murmur3_128().hashString(payload, StandardCharsets.UTF_8).asLong();
+    long now = System.currentTimeMillis();
+    Sent previous = sent.get(key);
+    // ForceRefreshが0以下なら、同じ内容は送り直さない
+    if (previous != null && previous.fingerprint() == fingerprint
+        && (forceRefreshMillis <= 0 || now - previous.sentAt() < forceRefreshMillis)) {
+      Metrics.increment("discord.output." + kind + ".skipped");
+      return false;
+    }
+
+    sent.put(key, new Sent(fingerprint, now));
+    Metrics.increment("discord.output." + kind + ".sent");
+    return true;
+  }
+
+  /**
+   * 送信に失敗したときに呼び、次回は同じ内容でも送るようにする
+   */
+  public void forget(String key) {
+    sent.remove(key);
+  }
+
+  public long getForceRefreshMillis() {
+    return forceRefreshMillis;
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.takayamaekawa.gcpot.discord;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import net.dv8tion.jda.api.requests.RestAction;
+
+/**
+ * 更新先 (メッセージ・プレゼンス) ごとの送信キュー
+ * 同じ更新先へは常に1件ずつ送り、送信待ちの更新は最新の1件だけを残す (古い更新は捨てる)
+ */
+public class UpdateQueue {
+  private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicLong lastDelayMillis = new AtomicLong();
+  private final AtomicLong maxDelayMillis = new AtomicLong();
+
+  private static final class Lane {
+    private Update inFlight = null;
+    private Update pending = null;
+    private boolean closed = false;
+
+    private synchronized boolean hasPending() {
+      return pending != null;
+    }
+  }
+
+  private record Update(Function<BooleanSupplier, CompletableFuture<?>> send, long enqueuedAt,
+      CompletableFuture<Boolean> result) {
+  }
+
+  @Inject
+  public UpdateQueue() {
+    Metrics.gauge("discord.queue.depth", depth::get);
+    Metrics.gauge("discord.queue.lanes", lanes::size);
+    Metrics.gauge("discord.queue.lastDelayMillis", lastDelayMillis::get);
+    Metrics.gauge("discord.queue.maxDelayMillis", maxDelayMillis::get);
+  }
+
+  /**
+   * RestActionを送る
+   * JDAのレートリミットのバケットで待っている間に新しい更新が来た場合、送信直前のチェックで取りやめる
+   * 
+   * @return 送った場合true、新しい更新に置き換えられた場合false
+   */
+  public CompletableFuture<Boolean> submit(String key, RestAction<?> action) {
+    return submit(key, isLatest -> action.setCheck(isLatest).submit());
+  }
+
+  /**
+   * 更新を送る
+   * 
+   * @param key  更新先
+   * @param send 「まだ最新か」を返すチェックを受け取り、送信を開始する関数
+   * @return 送った場合true、新しい更新に置き換えられた場合false
+   */
+  public CompletableFuture<Boolean> submit(String key, Function<BooleanSupplier, CompletableFuture<?>> send) {
+    Update update = new Update(send, System.nanoTime(), new CompletableFuture<>());
+    depth.incrementAndGet();
+    while (true) {
+      Lane lane = lanes.computeIfAbsent(key, k -> new Lane());
+      Update superseded = null;
+      boolean start = false;
+      synchronized (lane) {
+        if (lane.closed) {
+          continue;
+        }
+
+        if (lane.inFlight == null) {
+          lane.inFlight = update;
+          start = true;
+        } else {
+          superseded = lane.pending;
+          lane.pending = update;
+        }
+      }
+
+      if (superseded != null) {
+        drop(superseded);
+      }
+
+      if (start) {
+        run(key, lane, update);
+      }
+      return update.result();
+    }
+  }
+
+  private void run(String key, Lane lane, Update update) {
+    CompletableFuture<?> sending;
+    try {
+      sending = update.send().apply(() -> !lane.hasPending());
+    } catch (RuntimeException e) {
+      sending = CompletableFuture.failedFuture(e);
+    }
+
+    sending.whenComplete((result, ex) -> {
+      long delay = (System.nanoTime() - update.enqueuedAt()) / 1_000_000;
+      lastDelayMillis.set(delay);
+      maxDelayMillis.accumulateAndGet(delay, Math::max);
+
+      Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+      if (cause instanceof CancellationException) {
+        drop(update);
+      } else {
+        depth.decrementAndGet();
+        if (cause != null) {
+          Metrics.increment("discord.queue.failed");
+          update.result().completeExceptionally(cause);
+        } else {
+          Metrics.increment("discord.queue.sent");
+          update.result().complete(true);
+        }
+      }
+
+      Update next;
+      synchronized (lane) {
+        next = lane.pending;
+        lane.pending = null;
+        lane.inFlight = next;
+        if (next == null) {
+          lane.closed = true;
+          lanes.remove(key, lane);
+        }
+      }
+
+      if (next != null) {
+        run(key, lane, next);
+      }
+    });
+  }
+
+  private void drop(Update update) {
+    depth.decrementAndGet();
+    Metrics.increment("discord.queue.dropped");
+    update.result().complete(false);
+  }
+}
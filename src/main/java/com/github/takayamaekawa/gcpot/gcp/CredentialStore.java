@@ -0,0 +1,100 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+
+/**
+ * サービスアカウントの認証情報を一度だけ読み込み、アクセストークンを期限切れの前に裏で更新する
+ * (API呼び出しの中で遅延リフレッシュが走らないようにするため)
+ */
+public class CredentialStore {
+  private static final long RETRY_SECONDS = 30;
+  private final Logger logger;
+  private final String serviceAccountKeyPath;
+  private final long refreshMargin;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "gcp-credential-refresher");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile GoogleCredentials credentials = null;
+
+  @Inject
+  public CredentialStore(Logger logger, Config config) {
+    this.logger = logger;
+    this.serviceAccountKeyPath = config.getString("GCP.ServiceAccountKeyPath", "");
+    this.refreshMargin = config.getInt("GCP.Credentials.RefreshMargin", 300);
+  }
+
+  /**
+   * 認証情報を取得する (初回のみファイルから読み込み、更新スケジュールを開始する)
+   * 
+   * @return 認証情報 (読み込めない場合はnull)
+   */
+  public GoogleCredentials get() {
+    GoogleCredentials current = credentials;
+    if (current != null) {
+      return current;
+    }
+
+    synchronized (this) {
+      if (credentials != null) {
+        return credentials;
+      }
+
+      if (serviceAccountKeyPath == null || serviceAccountKeyPath.isEmpty()) {
+        return null;
+      }
+
+      try (InputStream in = Files.newInputStream(Path.of(serviceAccountKeyPath))) {
+        credentials = GoogleCredentials.fromStream(in)
+            .createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
+      } catch (IOException e) {
+        logger.error("Error loading service account key: " + e.getMessage(), e);
+        return null;
+      }
+
+      scheduler.execute(this::refresh);
+      return credentials;
+    }
+  }
+
+  private void refresh() {
+    try {
+      credentials.refresh();
+      AccessToken token = credentials.getAccessToken();
+      Date expiration = token != null ? token.getExpirationTime() : null;
+      if (expiration == null) {
+        logger.info("Access token has no expiration time, stop refreshing.");
+        return;
+      }
+
+      long delay = Math.max(RETRY_SECONDS,
+          TimeUnit.MILLISECONDS.toSeconds(expiration.getTime() - System.currentTimeMillis()) - refreshMargin);
+      logger.info("Access token refreshed, next refresh in " + delay + "s");
+      scheduler.schedule(this::refresh, delay, TimeUnit.SECONDS);
+    } catch (IOException e) {
+      logger.error("Access token refresh error, retry in " + RETRY_SECONDS + "s: " + e.getMessage(), e);
+      scheduler.schedule(this::refresh, RETRY_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
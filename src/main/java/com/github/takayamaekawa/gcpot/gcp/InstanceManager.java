@@ -1,48 +1,107 @@
 package com.github.takayamaekawa.gcpot.gcp;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.util.Collections;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 
-import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.api.gax.longrunning.OperationFuture;
 import com.google.api.gax.rpc.ApiException;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.compute.v1.AggregatedListInstancesRequest;
+import com.google.cloud.compute.v1.GetInstanceRequest;
 import com.google.cloud.compute.v1.Instance;
+import com.google.cloud.compute.v1.InstanceAggregatedList;
 import com.google.cloud.compute.v1.InstancesClient;
-import com.google.cloud.compute.v1.InstancesSettings;
+import com.google.cloud.compute.v1.InstancesScopedList;
 import com.google.cloud.compute.v1.Operation;
 import com.google.cloud.compute.v1.ResetInstanceRequest;
 import com.google.cloud.compute.v1.StartInstanceRequest;
 import com.google.cloud.compute.v1.StopInstanceRequest;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 
 import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+import com.github.takayamaekawa.gcpot.probe.FreezeDetector;
+import com.github.takayamaekawa.gcpot.probe.HttpProbe;
+import com.github.takayamaekawa.gcpot.probe.ServerListPing;
 
 public class InstanceManager {
+  private static final int PROBE_TIMEOUT = 5000;
   private final Logger logger;
   private final String serviceAccountKeyPath, projectId, zone, instanceName, webHost;
-  // private final Config config;
+  private final Config config;
   private final boolean check;
-  private GoogleCredentials credentials = null;
+  private final InstancesClientRegistry clients;
+  private final OperationTracker operations;
+  private final CredentialStore credentialStore;
+  private final InstanceTarget primary;
+  private final List<InstanceTarget> targets;
+  private final boolean fleetMode;
+  private final SingleFlight<InstanceSnapshot> snapshotFlight;
+  private final SingleFlight<Map<InstanceTarget, InstanceSnapshot>> fleetFlight;
+  private final MetadataCache metadata;
+  private final List<Runnable> lifecycleListeners = new CopyOnWriteArrayList<>();
+  // 取得結果の反映とinvalidateを排他にし、invalidateより前に始まった取得の結果を反映しないようにする
+  private final Object observeLock = new Object();
+  // フリーズ判定の履歴はインスタンスごとに持ち、操作したインスタンスの分だけリセットする
+  private final Map<InstanceTarget, FreezeDetector> freezeDetectors = new ConcurrentHashMap<>();
+  private final LifecycleStateMachine lifecycle;
+  private final HttpProbe httpProbe;
+  private final ServerListPing serverListPing;
+  private final int healthPort;
+  private final ExecutorService probeExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
   @Inject
-  public InstanceManager(Logger logger, Config config) {
+  public InstanceManager(Logger logger, Config config, InstancesClientRegistry clients,
+      OperationTracker operations, CredentialStore credentialStore, MetadataCache metadata, HttpProbe httpProbe,
+      ServerListPing serverListPing) {
     this.logger = logger;
-    // this.config = config;
+    this.httpProbe = httpProbe;
+    this.serverListPing = serverListPing;
+    this.metadata = metadata;
+    this.clients = clients;
+    this.operations = operations;
+    this.credentialStore = credentialStore;
+    this.config = config;
     this.serviceAccountKeyPath = config.getString("GCP.ServiceAccountKeyPath", "");
     this.projectId = config.getString("GCP.ProjectId", "");
     this.zone = config.getString("GCP.Zone", "");
     this.instanceName = config.getString("GCP.InstanceName", "");
     this.webHost = config.getString("GCP.WebHost", "");
+    // 既定ではステータス確認の最小間隔より少し短くし、LoopStatusのtickごとに1回だけ取得して他はそれを共有する
+    int minPeriod = config.getInt("GCP.Status.MinPeriod", Math.min(5, config.getInt("GCP.Status.Period", 20)));
+    long snapshotFreshness = 1000L * config.getInt("GCP.Snapshot.Freshness", Math.max(1, minPeriod - 1));
+    this.snapshotFlight = new SingleFlight<>(snapshotFreshness);
+    this.fleetFlight = new SingleFlight<>(snapshotFreshness);
+    this.primary = new InstanceTarget(zone, instanceName);
+    this.targets = loadTargets(config);
+    this.fleetMode = targets.size() > 1;
+    this.lifecycle = new LifecycleStateMachine(logger);
+    // 0(未設定)ならTCP/Minecraftのプローブは行わず、HTTPだけで判定する
+    this.healthPort = config.getInt("GCP.Health.Port", 0);
+    Metrics.gauge("gcp.health.score", () -> String.format("%.3f", freezeDetector(primary).getScore()));
+    for (MetadataCache.Field field : MetadataCache.Field.values()) {
+      Metrics.gauge("gcp.metadata.ageMillis." + field.name().toLowerCase(),
+          () -> metadata.getAge(primary, field).orElse(-1));
+    }
     this.check = serviceAccountKeyPath != null && !serviceAccountKeyPath.isEmpty() &&
         projectId != null && !projectId.isEmpty() &&
         zone != null && !zone.isEmpty() &&
@@ -50,67 +109,175 @@ public class InstanceManager {
         webHost != null && !webHost.isEmpty();
   }
 
-  public CompletableFuture<GoogleCredentials> getCredentials() {
-    CompletableFuture<GoogleCredentials> future = new CompletableFuture<>();
-    try {
-      if (!check) {
-        future.complete(null);
-        return future;
-      } else if (credentials != null) {
-        future.complete(this.credentials);
-        return future;
-      } else {
-        this.credentials = GoogleCredentials
-            .fromStream(new FileInputStream(serviceAccountKeyPath))
-            .createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
-        future.complete(credentials);
-        return future;
+  // GCP.InstanceNameを先頭に、GCP.Fleet.Instancesのインスタンスを重複なく並べる
+  private List<InstanceTarget> loadTargets(Config config) {
+    Set<InstanceTarget> loaded = new LinkedHashSet<>();
+    loaded.add(primary);
+    Object fleetObject = config.getNestedValue("GCP.Fleet.Instances");
+    if (fleetObject instanceof List<?> fleetList) {
+      for (Object entry : fleetList) {
+        Map<String, Object> instanceMap = config.getStringObjectMap(entry);
+        if (instanceMap == null) {
+          continue;
+        }
+
+        Object name = instanceMap.get("Name");
+        Object fleetZone = instanceMap.getOrDefault("Zone", zone);
+        if (name instanceof String n && !n.isEmpty() && fleetZone instanceof String z && !z.isEmpty()) {
+          loaded.add(new InstanceTarget(z, n));
+        } else {
+          logger.error("Invalid GCP.Fleet.Instances entry: " + entry);
+        }
       }
-    } catch (IOException e) {
-      future.complete(null);
-      return future;
     }
+
+    return List.copyOf(loaded);
+  }
+
+  public InstanceTarget getPrimaryTarget() {
+    return primary;
+  }
+
+  public List<InstanceTarget> getTargets() {
+    return targets;
+  }
+
+  public boolean isFleetMode() {
+    return fleetMode;
+  }
+
+  /**
+   * インスタンス名から対象を探す (nullや空文字の場合はGCP.InstanceNameを返す)
+   */
+  public Optional<InstanceTarget> resolveTarget(String name) {
+    if (name == null || name.isEmpty()) {
+      return Optional.of(primary);
+    }
+
+    return targets.stream().filter(target -> target.name().equals(name)).findFirst();
+  }
+
+  /**
+   * キャッシュされたステータスを返す (API呼び出しは行わない)
+   */
+  public Optional<String> getCachedStatus(InstanceTarget target) {
+    return metadata.get(target, MetadataCache.Field.STATUS);
+  }
+
+  /**
+   * start/stop/resetの実行時と完了時に呼ばれるリスナーを登録する
+   */
+  public void addLifecycleListener(Runnable listener) {
+    lifecycleListeners.add(listener);
+  }
+
+  /**
+   * 実行中のstart/stop/reset (なければempty)
+   */
+  public Optional<LifecycleStateMachine.Kind> getInFlightOperation(InstanceTarget target) {
+    return lifecycle.getInFlight(target);
+  }
+
+  public LifecycleStateMachine.State getLifecycleState(InstanceTarget target) {
+    return lifecycle.getState(target);
+  }
+
+  private void observe(SingleFlight<?> flight, long generation, Map<InstanceTarget, InstanceSnapshot> snapshots) {
+    synchronized (observeLock) {
+      if (!flight.isCurrent(generation)) {
+        // 取得中にstart/stop/resetが行われたので、古い結果で状態を上書きしない
+        Metrics.increment("gcp.snapshot.stale");
+        return;
+      }
+
+      snapshots.forEach((target, snapshot) -> {
+        metadata.putAll(target, snapshot);
+        lifecycle.observe(target, snapshot.getStatus());
+      });
+    }
+  }
+
+  // ライフサイクルの操作でメタデータが変わるので、キャッシュと共有中の取得結果を破棄する
+  private void invalidate(InstanceTarget target) {
+    synchronized (observeLock) {
+      snapshotFlight.invalidate();
+      fleetFlight.invalidate();
+      metadata.invalidate(target);
+    }
+    FreezeDetector freezeDetector = freezeDetectors.get(target);
+    if (freezeDetector != null) {
+      freezeDetector.reset();
+    }
+    lifecycleListeners.forEach(Runnable::run);
+  }
+
+  private FreezeDetector freezeDetector(InstanceTarget target) {
+    return freezeDetectors.computeIfAbsent(target, key -> new FreezeDetector(config, "GCP.Health"));
+  }
+
+  public CompletableFuture<GoogleCredentials> getCredentials() {
+    if (!check) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return CompletableFuture.completedFuture(credentialStore.get());
+  }
+
+
+  /**
+   * 共有クライアントを作成し、1回GETを投げてトランスポートとアクセストークンを温めておく
+   * (最初のLoopStatusのtickでクライアント生成のコストを払わないようにする)
+   */
+  public CompletableFuture<Void> warmUp() {
+    return getCredentials().thenAccept(credential -> {
+      if (!check || credential == null) {
+        return;
+      }
+
+      long start = System.nanoTime();
+      try {
+        clients.get(serviceAccountKeyPath, credential).get(projectId, zone, instanceName);
+        logger.info("InstancesClient warmed up in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+      } catch (ApiException | IOException e) {
+        logger.error("InstancesClient warm-up error: " + e.getMessage(), e);
+      }
+    });
   }
 
   public CompletableFuture<Boolean> startInstance() {
+    return startInstance(primary);
+  }
+
+  /**
+   * 同じインスタンスでstartが実行中であればその完了を待ち、別の操作が実行中であれば
+   * LifecycleStateMachine.ConflictExceptionで失敗する
+   */
+  public CompletableFuture<Boolean> startInstance(InstanceTarget target) {
+    return lifecycle.run(target, LifecycleStateMachine.Kind.START, () -> requestStart(target));
+  }
+
+  private CompletableFuture<Boolean> requestStart(InstanceTarget target) {
+    invalidate(target);
     return getCredentials().thenCompose(credential -> {
       if (!check || credential == null) {
         return CompletableFuture.completedFuture(false);
       }
 
       try {
-        InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-            .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build());
+        InstancesClient instancesClient = clients.get(serviceAccountKeyPath, credential);
 
         StartInstanceRequest request = StartInstanceRequest.newBuilder()
             .setProject(projectId)
-            .setZone(zone)
-            .setInstance(instanceName)
+            .setZone(target.zone())
+            .setInstance(target.name())
             .build();
 
         // リセットリクエストを非同期で送信
         OperationFuture<Operation, Operation> operationFuture = instancesClient.startAsync(request);
 
-        // 操作が完了するのを待ち、成功したかどうかを確認する
-        return CompletableFuture.supplyAsync(() -> {
-          try {
-            // 非同期操作の完了を待つ (完了するまでブロック)
-            Operation operation = operationFuture.get(); // 操作が完了するまで待機
-            com.google.cloud.compute.v1.Error errorStatus = operation.getError();
-            int errorCounts = errorStatus.getErrorsCount();
-            // 操作が完了しており、エラーがない場合
-            if (errorCounts == 0) {
-              logger.info("Instance start successful: " + instanceName);
-              return true;
-            } else {
-              logger.error("Start failed: " + errorStatus.toString());
-              return false;
-            }
-          } catch (InterruptedException | ExecutionException e) {
-            logger.error("Start error: ", e.getMessage(), e);
-            return false;
-          }
-        });
+        // 操作の完了はコールバックで受け取る (完了までスレッドをブロックしない)
+        return operations.track("start", target, operationFuture)
+            .whenComplete((success, ex) -> invalidate(target));
       } catch (ApiException | IOException e) {
         logger.error("Start error: ", e.getMessage(), e);
         return CompletableFuture.completedFuture(false);
@@ -119,44 +286,39 @@ public class InstanceManager {
   }
 
   public CompletableFuture<Boolean> stopInstance() {
+    return stopInstance(primary);
+  }
+
+  /**
+   * 同じインスタンスでstopが実行中であればその完了を待ち、別の操作が実行中であれば
+   * LifecycleStateMachine.ConflictExceptionで失敗する
+   */
+  public CompletableFuture<Boolean> stopInstance(InstanceTarget target) {
+    return lifecycle.run(target, LifecycleStateMachine.Kind.STOP, () -> requestStop(target));
+  }
+
+  private CompletableFuture<Boolean> requestStop(InstanceTarget target) {
+    invalidate(target);
     return getCredentials().thenCompose(credential -> {
       if (!check || credential == null) {
         return CompletableFuture.completedFuture(false);
       }
 
       try {
-        InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-            .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build());
+        InstancesClient instancesClient = clients.get(serviceAccountKeyPath, credential);
 
         StopInstanceRequest request = StopInstanceRequest.newBuilder()
             .setProject(projectId)
-            .setZone(zone)
-            .setInstance(instanceName)
+            .setZone(target.zone())
+            .setInstance(target.name())
             .build();
 
         // リセットリクエストを非同期で送信
         OperationFuture<Operation, Operation> operationFuture = instancesClient.stopAsync(request);
 
-        // 操作が完了するのを待ち、成功したかどうかを確認する
-        return CompletableFuture.supplyAsync(() -> {
-          try {
-            // 非同期操作の完了を待つ (完了するまでブロック)
-            Operation operation = operationFuture.get(); // 操作が完了するまで待機
-            com.google.cloud.compute.v1.Error errorStatus = operation.getError();
-            int errorCounts = errorStatus.getErrorsCount();
-            // 操作が完了しており、エラーがない場合
-            if (errorCounts == 0) {
-              logger.info("Instance stop successful: " + instanceName);
-              return true;
-            } else {
-              logger.error("Stop failed: " + errorStatus.toString());
-              return false;
-            }
-          } catch (InterruptedException | ExecutionException e) {
-            logger.error("Stop error: ", e.getMessage(), e);
-            return false;
-          }
-        });
+        // 操作の完了はコールバックで受け取る (完了までスレッドをブロックしない)
+        return operations.track("stop", target, operationFuture)
+            .whenComplete((success, ex) -> invalidate(target));
       } catch (ApiException | IOException e) {
         logger.error("Stop error: ", e.getMessage(), e);
         return CompletableFuture.completedFuture(false);
@@ -165,44 +327,39 @@ public class InstanceManager {
   }
 
   public CompletableFuture<Boolean> resetInstance() {
+    return resetInstance(primary);
+  }
+
+  /**
+   * 同じインスタンスでresetが実行中であればその完了を待ち、別の操作が実行中であれば
+   * LifecycleStateMachine.ConflictExceptionで失敗する
+   */
+  public CompletableFuture<Boolean> resetInstance(InstanceTarget target) {
+    return lifecycle.run(target, LifecycleStateMachine.Kind.RESET, () -> requestReset(target));
+  }
+
+  private CompletableFuture<Boolean> requestReset(InstanceTarget target) {
+    invalidate(target);
     return getCredentials().thenCompose(credential -> {
       if (!check || credential == null) {
         return CompletableFuture.completedFuture(false);
       }
 
       try {
-        InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-            .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build());
+        InstancesClient instancesClient = clients.get(serviceAccountKeyPath, credential);
 
         ResetInstanceRequest request = ResetInstanceRequest.newBuilder()
             .setProject(projectId)
-            .setZone(zone)
-            .setInstance(instanceName)
+            .setZone(target.zone())
+            .setInstance(target.name())
             .build();
 
         // リセットリクエストを非同期で送信
         OperationFuture<Operation, Operation> operationFuture = instancesClient.resetAsync(request);
 
-        // 操作が完了するのを待ち、成功したかどうかを確認する
-        return CompletableFuture.supplyAsync(() -> {
-          try {
-            // 非同期操作の完了を待つ (完了するまでブロック)
-            Operation operation = operationFuture.get(); // 操作が完了するまで待機
-            com.google.cloud.compute.v1.Error errorStatus = operation.getError();
-            int errorCounts = errorStatus.getErrorsCount();
-            // 操作が完了しており、エラーがない場合
-            if (errorCounts == 0) {
-              logger.info("Instance reset successful: " + instanceName);
-              return true;
-            } else {
-              logger.error("Reset failed: " + errorStatus.toString());
-              return false;
-            }
-          } catch (InterruptedException | ExecutionException e) {
-            logger.error("Reset error: " + e.getMessage(), e);
-            return false;
-          }
-        });
+        // 操作の完了はコールバックで受け取る (完了までスレッドをブロックしない)
+        return operations.track("reset", target, operationFuture)
+            .whenComplete((success, ex) -> invalidate(target));
       } catch (ApiException | IOException e) {
         logger.error("Reset error: ", e.getMessage(), e);
         return CompletableFuture.completedFuture(false);
@@ -210,123 +367,234 @@ public class InstanceManager {
     });
   }
 
-  public CompletableFuture<Boolean> isInstanceRunning() {
+  public CompletableFuture<InstanceSnapshot> fetchSnapshot() {
+    return fetchSnapshot(primary);
+  }
+
+  /**
+   * インスタンス情報を取得する
+   * 鮮度の範囲内であれば、同時に呼ばれても1回のAPI呼び出しと1つのInstanceを共有する
+   * フリートモードでは、全インスタンスを1回のaggregatedListでまとめて取得する
+   */
+  public CompletableFuture<InstanceSnapshot> fetchSnapshot(InstanceTarget target) {
+    if (!fleetMode) {
+      return snapshotFlight.get(this::loadSnapshot);
+    }
+
+    return fleetFlight.get(this::loadFleet).thenApply(snapshots -> {
+      InstanceSnapshot snapshot = snapshots.get(target);
+      if (snapshot == null) {
+        throw new IllegalStateException("Instance not found in aggregated list: " + target);
+      }
+
+      return snapshot;
+    });
+  }
+
+  private CompletableFuture<InstanceSnapshot> loadSnapshot(long generation) {
     return getCredentials().thenCompose(credential -> {
-      CompletableFuture<Boolean> future = new CompletableFuture<>();
-      if (!check) {
-        future.complete(false);
+      CompletableFuture<InstanceSnapshot> future = new CompletableFuture<>();
+      if (!check || credential == null) {
+        future.completeExceptionally(new IllegalStateException("GCP settings or credentials are missing."));
         return future;
       }
 
-      try (InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-          .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build())) {
-        Instance instance = instancesClient.get(projectId, zone, instanceName);
-        boolean isRunning = "RUNNING".equalsIgnoreCase(instance.getStatus());
-        future.complete(isRunning);
-        return future;
-      } catch (ApiException e) {
-        logger.error("Error while checking instance status: " + e.getMessage(), e);
-        future.complete(false);
-        return future;
-      } catch (IOException e) {
-        logger.error("An IOException error occurred: " + e.getMessage(), e);
-        future.complete(false);
-        return future;
+      try {
+        GetInstanceRequest request = GetInstanceRequest.newBuilder()
+            .setProject(projectId)
+            .setZone(zone)
+            .setInstance(instanceName)
+            .build();
+
+        ApiFutures.addCallback(clients.get(serviceAccountKeyPath, credential).getCallable().futureCall(request),
+            new ApiFutureCallback<Instance>() {
+              @Override
+              public void onSuccess(Instance instance) {
+                InstanceSnapshot snapshot = new InstanceSnapshot(instance, System.currentTimeMillis());
+                observe(snapshotFlight, generation, Map.of(primary, snapshot));
+                future.complete(snapshot);
+              }
+
+              @Override
+              public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+              }
+            }, MoreExecutors.directExecutor());
+      } catch (ApiException | IOException e) {
+        future.completeExceptionally(e);
       }
+
+      return future;
     });
   }
 
-  public CompletableFuture<Boolean> isInstanceFrozen() {
+  private CompletableFuture<Map<InstanceTarget, InstanceSnapshot>> loadFleet(long generation) {
     return getCredentials().thenCompose(credential -> {
-      CompletableFuture<Boolean> future = new CompletableFuture<>();
-      if (!check) {
-        future.complete(true);
+      CompletableFuture<Map<InstanceTarget, InstanceSnapshot>> future = new CompletableFuture<>();
+      if (!check || credential == null) {
+        future.completeExceptionally(new IllegalStateException("GCP settings or credentials are missing."));
         return future;
       }
 
-      try (InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-          .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build())) {
-        Instance instance = instancesClient.get(projectId, zone, instanceName);
-        String instanceIP = instance.getNetworkInterfaces(0).getNetworkIP();
-
-        if (instanceIP != null && !instanceIP.isEmpty()) {
-          // return !pingInstance(instanceIP);
-          return isServerResponding();
-        } else {
-          future.complete(true);
-          return future;
-        }
-      } catch (ApiException e) {
-        logger.error("Error while checking instance freeze status: " + e.getMessage(), e);
-        future.complete(true);
-        return future;
-      } catch (IOException e) {
-        logger.error("An IOException error occurred: " + e.getMessage(), e);
-        future.complete(true);
-        return future;
+      try {
+        // 対象のインスタンス名だけに絞り込んで、全ゾーンを1回のaggregatedListで取得する
+        String filter = targets.stream()
+            .map(InstanceTarget::name)
+            .distinct()
+            .map(name -> "(name = \"" + name + "\")")
+            .collect(Collectors.joining(" OR "));
+        loadFleetPage(clients.get(serviceAccountKeyPath, credential), filter, null, generation, new HashMap<>(),
+            future);
+      } catch (ApiException | IOException e) {
+        future.completeExceptionally(e);
       }
+
+      return future;
     });
   }
 
-  private CompletableFuture<Boolean> isServerResponding() {
-    CompletableFuture<Boolean> future = new CompletableFuture<>();
-    try {
-      // URIを使ってURLを作成
-      URI uri = new URI("https", webHost, "/", null);
-      URL url = uri.toURL(); // URLに変換
-      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("GET");
-      connection.setConnectTimeout(5000);
-      connection.setReadTimeout(5000);
-      int responseCode = connection.getResponseCode();
-      boolean is200 = responseCode == 200;
-      future.complete(!is200);
-      return future;
-    } catch (IOException | IllegalArgumentException | URISyntaxException e) {
-      // logger.error("An isServerResponding error occurred: " + e.getMessage(), e);
-      logger.info("現在WEBサーバーにアクセスできません。");
-      future.complete(true);
-      return future;
+  private void loadFleetPage(InstancesClient instancesClient, String filter, String pageToken, long generation,
+      Map<InstanceTarget, InstanceSnapshot> snapshots, CompletableFuture<Map<InstanceTarget, InstanceSnapshot>> future) {
+    AggregatedListInstancesRequest.Builder request = AggregatedListInstancesRequest.newBuilder()
+        .setProject(projectId)
+        .setFilter(filter)
+        .setReturnPartialSuccess(true);
+    if (pageToken != null) {
+      request.setPageToken(pageToken);
+    }
+
+    ApiFutures.addCallback(instancesClient.aggregatedListCallable().futureCall(request.build()),
+        new ApiFutureCallback<InstanceAggregatedList>() {
+          @Override
+          public void onSuccess(InstanceAggregatedList page) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, InstancesScopedList> entry : page.getItemsMap().entrySet()) {
+              // キーは "zones/asia-northeast1-b" の形式
+              String scope = entry.getKey();
+              String scopeZone = scope.substring(scope.lastIndexOf('/') + 1);
+              for (Instance instance : entry.getValue().getInstancesList()) {
+                InstanceTarget target = new InstanceTarget(scopeZone, instance.getName());
+                if (targets.contains(target)) {
+                  snapshots.put(target, new InstanceSnapshot(instance, now));
+                }
+              }
+            }
+
+            String nextPageToken = page.getNextPageToken();
+            if (nextPageToken != null && !nextPageToken.isEmpty()) {
+              loadFleetPage(instancesClient, filter, nextPageToken, generation, snapshots, future);
+            } else {
+              observe(fleetFlight, generation, snapshots);
+              future.complete(Map.copyOf(snapshots));
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }, MoreExecutors.directExecutor());
+  }
+
+  public CompletableFuture<Boolean> isInstanceRunning() {
+    if (!check) {
+      return CompletableFuture.completedFuture(false);
     }
+
+    return fetchSnapshot().thenApply(InstanceSnapshot::isRunning)
+        .exceptionally(ex -> {
+          logger.error("Error while checking instance status: " + ex.getMessage(), ex);
+          return false;
+        });
   }
 
-  public CompletableFuture<String> getStaticAddress() {
-    return getCredentials().thenCompose(credential -> {
-      CompletableFuture<String> future = new CompletableFuture<>();
-      if (!check) {
-        future.complete(null);
-        return future;
+  public CompletableFuture<Boolean> isInstanceFrozen() {
+    if (!check) {
+      return CompletableFuture.completedFuture(true);
+    }
+
+    return fetchSnapshot().thenCompose(snapshot -> {
+      String instanceIP = snapshot.getNetworkIP();
+      if (instanceIP == null) {
+        return CompletableFuture.completedFuture(true);
+      }
+
+      // HTTP/TCP/Minecraftの3つのプローブを並行して実行し、スコアでフリーズを判定する
+      FreezeDetector freezeDetector = freezeDetector(primary);
+      CompletableFuture<FreezeDetector.Sample> http = httpProbe.probe(webHost);
+      if (healthPort <= 0) {
+        return http.thenApply(sample -> freezeDetector.record(Map.of(FreezeDetector.Signal.HTTP, sample)));
       }
 
-      try (InstancesClient instancesClient = InstancesClient.create(InstancesSettings.newBuilder()
-          .setCredentialsProvider(FixedCredentialsProvider.create(credential)).build())) {
-        Instance instance = instancesClient.get(projectId, zone, instanceName);
-
-        // 外部IPを取得
-        /*
-         * String externalIp =
-         * instance.getNetworkInterfaces(0).getAccessConfigs(0).getNatIP();
-         * if (externalIp != null && !externalIp.isEmpty()) {
-         * logger.info("External IP Address: " + externalIp);
-         * return externalIp;
-         * }
-         */
-
-        // 外部IPがない場合は、内部IPを取得
-        String internalIp = instance.getNetworkInterfaces(0).getNetworkIP();
-        if (internalIp != null && !internalIp.isEmpty()) {
-          logger.info("Internal IP Address: " + internalIp);
-          future.complete(internalIp);
-          return future;
+      CompletableFuture<FreezeDetector.Sample> tcp = probe(() -> {
+        try (Socket socket = new Socket()) {
+          socket.connect(new InetSocketAddress(instanceIP, healthPort), PROBE_TIMEOUT);
         }
+      });
+      CompletableFuture<FreezeDetector.Sample> minecraft = serverListPing.ping(instanceIP, healthPort)
+          .thenApply(ServerListPing.Result::toSample);
+      return CompletableFuture.allOf(http, tcp, minecraft).thenApply(v -> {
+        Map<FreezeDetector.Signal, FreezeDetector.Sample> samples = new EnumMap<>(FreezeDetector.Signal.class);
+        samples.put(FreezeDetector.Signal.HTTP, http.join());
+        samples.put(FreezeDetector.Signal.TCP, tcp.join());
+        samples.put(FreezeDetector.Signal.MINECRAFT, minecraft.join());
+        return freezeDetector.record(samples);
+      });
+    }).exceptionally(ex -> {
+      logger.error("Error while checking instance freeze status: " + ex.getMessage(), ex);
+      return true;
+    });
+  }
 
-        future.complete(null);
-        return future;
-      } catch (ApiException | IOException e) {
-        logger.error("Error while getting static address: " + e.getMessage(), e);
-        future.complete(null);
-        return future;
+  private interface BlockingProbe {
+    void run() throws IOException;
+  }
+
+  // ブロッキングするプローブは仮想スレッドで実行し、かかった時間を計る
+  private CompletableFuture<FreezeDetector.Sample> probe(BlockingProbe blockingProbe) {
+    return CompletableFuture.supplyAsync(() -> {
+      long start = System.nanoTime();
+      try {
+        blockingProbe.run();
+        return new FreezeDetector.Sample(true, (System.nanoTime() - start) / 1_000_000);
+      } catch (IOException e) {
+        return FreezeDetector.Sample.failed((System.nanoTime() - start) / 1_000_000);
+      }
+    }, probeExecutor);
+  }
+
+  public CompletableFuture<String> getStaticAddress() {
+    if (!check) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // 内部IPはほとんど変わらないので、TTLの間はAPIを呼ばない
+    Optional<String> cached = metadata.get(primary, MetadataCache.Field.NETWORK_IP);
+    if (cached.isPresent()) {
+      return CompletableFuture.completedFuture(cached.get());
+    }
+
+    return fetchSnapshot().thenApply(snapshot -> {
+      // 外部IPを取得
+      /*
+       * String externalIp =
+       * instance.getNetworkInterfaces(0).getAccessConfigs(0).getNatIP();
+       * if (externalIp != null && !externalIp.isEmpty()) {
+       * logger.info("External IP Address: " + externalIp);
+       * return externalIp;
+       * }
+       */
+
+      // 外部IPがない場合は、内部IPを取得
+      String internalIp = snapshot.getNetworkIP();
+      if (internalIp != null) {
+        logger.info("Internal IP Address: " + internalIp);
       }
+
+      return internalIp;
+    }).exceptionally(ex -> {
+      logger.error("Error while getting static address: " + ex.getMessage(), ex);
+      return null;
     });
   }
 
@@ -0,0 +1,29 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import com.google.cloud.compute.v1.Instance;
+
+/**
+ * ある時点で取得したインスタンス情報
+ * 
+ * @param instance  Compute APIから取得したInstance
+ * @param fetchedAt 取得した時刻 (System.currentTimeMillis)
+ */
+public record InstanceSnapshot(Instance instance, long fetchedAt) {
+
+  public String getStatus() {
+    return instance.getStatus();
+  }
+
+  public boolean isRunning() {
+    return "RUNNING".equalsIgnoreCase(instance.getStatus());
+  }
+
+  public String getNetworkIP() {
+    if (instance.getNetworkInterfacesCount() == 0) {
+      return null;
+    }
+
+    String networkIP = instance.getNetworkInterfaces(0).getNetworkIP();
+    return networkIP == null || networkIP.isEmpty() ? null : networkIP;
+  }
+}
@@ -0,0 +1,15 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+/**
+ * 操作・監視の対象となるGCEインスタンス
+ * 
+ * @param zone インスタンスのゾーン (例: "asia-northeast1-b")
+ * @param name インスタンス名
+ */
+public record InstanceTarget(String zone, String name) {
+
+  @Override
+  public String toString() {
+    return zone + "/" + name;
+  }
+}
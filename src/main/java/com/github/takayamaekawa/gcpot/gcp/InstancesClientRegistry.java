@@ -0,0 +1,80 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.compute.v1.InstancesClient;
+import com.google.cloud.compute.v1.InstancesSettings;
+import com.google.inject.Inject;
+
+/**
+ * 認証情報ごとに1つのInstancesClientを保持し、全てのGCE呼び出しで使い回す
+ * (呼び出しごとにクライアントを作るとトランスポートとスレッドがリークするため)
+ */
+public class InstancesClientRegistry {
+  private final Logger logger;
+  private final Map<String, InstancesClient> clients = new ConcurrentHashMap<>();
+  private final String endpoint; // nullなら既定のエンドポイント
+
+  @Inject
+  public InstancesClientRegistry(Logger logger) {
+    this(logger, null);
+  }
+
+  // ベンチマークなどで、GCEの代わりのエンドポイントに向ける
+  InstancesClientRegistry(Logger logger, String endpoint) {
+    this.logger = logger;
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * 認証情報のキーに対応するクライアントを取得する (なければ作成する)
+   * 
+   * @param key         認証情報を識別するキー (例: サービスアカウントキーのパス)
+   * @param credentials キーに対応する認証情報
+   * @return 共有のInstancesClient
+   */
+  public InstancesClient get(String key, GoogleCredentials credentials) throws IOException {
+    try {
+      return clients.computeIfAbsent(key, k -> {
+        try {
+          logger.info("Creating shared InstancesClient: " + k);
+          InstancesSettings.Builder settings = InstancesSettings.newBuilder()
+              .setCredentialsProvider(FixedCredentialsProvider.create(credentials));
+          if (endpoint != null) {
+            settings.setEndpoint(endpoint);
+          }
+          return InstancesClient.create(settings.build());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  public void close() {
+    clients.forEach((key, client) -> {
+      client.shutdown();
+      try {
+        if (!client.awaitTermination(5, TimeUnit.SECONDS)) {
+          client.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        client.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+      client.close();
+      logger.info("Closed shared InstancesClient: " + key);
+    });
+    clients.clear();
+  }
+}
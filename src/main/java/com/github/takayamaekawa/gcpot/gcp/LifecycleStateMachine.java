@@ -0,0 +1,181 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * インスタンスごとのライフサイクルの状態と、実行中のstart/stop/reset
+ * 同じ操作が実行中であればその完了を待ち、別の操作が実行中であれば拒否する
+ */
+public class LifecycleStateMachine {
+  private final Logger logger;
+  private final Map<InstanceTarget, Entry> entries = new ConcurrentHashMap<>();
+
+  public enum State {
+    STAGING,
+    RUNNING,
+    STOPPING,
+    TERMINATED,
+    UNKNOWN;
+
+    /**
+     * GCEのステータスを対応する状態にまとめる
+     */
+    public static State fromStatus(String status) {
+      if (status == null) {
+        return UNKNOWN;
+      }
+
+      return switch (status) {
+        case "PROVISIONING", "STAGING", "REPAIRING" -> STAGING;
+        case "RUNNING" -> RUNNING;
+        case "STOPPING", "SUSPENDING" -> STOPPING;
+        case "TERMINATED", "STOPPED", "SUSPENDED" -> TERMINATED;
+        default -> UNKNOWN;
+      };
+    }
+  }
+
+  public enum Kind {
+    START(State.STAGING, State.RUNNING),
+    STOP(State.STOPPING, State.TERMINATED),
+    RESET(State.STAGING, State.RUNNING);
+
+    private final State during, after;
+
+    Kind(State during, State after) {
+      this.during = during;
+      this.after = after;
+    }
+
+    // 状態が分からないときは、GCE側の判断に任せる
+    private boolean isAllowedFrom(State state) {
+      return switch (this) {
+        case START -> state == State.TERMINATED || state == State.UNKNOWN;
+        case STOP -> state == State.STAGING || state == State.RUNNING || state == State.UNKNOWN;
+        case RESET -> state == State.RUNNING || state == State.UNKNOWN;
+      };
+    }
+
+    public String label() {
+      return name().toLowerCase();
+    }
+  }
+
+  private record Entry(State state, Kind inFlight, CompletableFuture<Boolean> future) {
+    private static final Entry INITIAL = new Entry(State.UNKNOWN, null, null);
+  }
+
+  /**
+   * 実行中の操作と競合したとき、または今の状態から実行できない操作のときに返す例外
+   */
+  public static class ConflictException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+    private final Kind requested;
+    private final Kind inFlight;
+    private final State state;
+
+    private ConflictException(Kind requested, Kind inFlight, State state) {
+      super(inFlight != null
+          ? requested.label() + " rejected: " + inFlight.label() + " is in progress"
+          : requested.label() + " rejected: instance is " + state);
+      this.requested = requested;
+      this.inFlight = inFlight;
+      this.state = state;
+    }
+
+    public Kind getRequested() {
+      return requested;
+    }
+
+    public Optional<Kind> getInFlight() {
+      return Optional.ofNullable(inFlight);
+    }
+
+    public State getState() {
+      return state;
+    }
+  }
+
+  LifecycleStateMachine(Logger logger) {
+    this.logger = logger;
+  }
+
+  public State getState(InstanceTarget target) {
+    return entries.getOrDefault(target, Entry.INITIAL).state();
+  }
+
+  public Optional<Kind> getInFlight(InstanceTarget target) {
+    return Optional.ofNullable(entries.getOrDefault(target, Entry.INITIAL).inFlight());
+  }
+
+  /**
+   * 取得したGCEのステータスを反映する (操作の実行中は、操作の完了で状態を確定させるため無視する)
+   */
+  void observe(InstanceTarget target, String status) {
+    State observed = State.fromStatus(status);
+    entries.compute(target, (key, entry) -> {
+      if (entry != null && entry.inFlight() != null) {
+        return entry;
+      }
+
+      return new Entry(observed, null, null);
+    });
+  }
+
+  /**
+   * 操作を実行する
+   * 
+   * @param operation 操作を開始し、完了したら結果を返す処理 (実際に開始する場合だけ呼ばれる)
+   * @return 操作の結果 (同じ操作が実行中であればその結果を共有する。競合した場合はConflictExceptionで失敗する)
+   */
+  CompletableFuture<Boolean> run(InstanceTarget target, Kind kind, Supplier<CompletableFuture<Boolean>> operation) {
+    CompletableFuture<Boolean> created = new CompletableFuture<>();
+    Entry decided = entries.compute(target, (key, entry) -> {
+      Entry current = entry != null ? entry : Entry.INITIAL;
+      if (current.inFlight() != null || !kind.isAllowedFrom(current.state())) {
+        return current;
+      }
+
+      return new Entry(kind.during, kind, created);
+    });
+
+    if (decided.future() == created) {
+      logger.info("Lifecycle " + target + ": " + kind.label() + " -> " + kind.during);
+      CompletableFuture<Boolean> started;
+      try {
+        started = operation.get();
+      } catch (RuntimeException e) {
+        started = CompletableFuture.failedFuture(e);
+      }
+
+      started.whenComplete((success, ex) -> {
+        State settled = ex == null && Boolean.TRUE.equals(success) ? kind.after : State.UNKNOWN;
+        entries.put(target, new Entry(settled, null, null));
+        logger.info("Lifecycle " + target + ": " + kind.label() + " finished -> " + settled);
+        if (ex != null) {
+          created.completeExceptionally(ex);
+        } else {
+          created.complete(success);
+        }
+      });
+      return created;
+    }
+
+    if (decided.inFlight() == kind) {
+      Metrics.increment("gcp.lifecycle.joined");
+      logger.info("Lifecycle " + target + ": joined in-flight " + kind.label());
+      return decided.future();
+    }
+
+    Metrics.increment("gcp.lifecycle.rejected");
+    return CompletableFuture.failedFuture(new ConflictException(kind, decided.inFlight(), decided.state()));
+  }
+}
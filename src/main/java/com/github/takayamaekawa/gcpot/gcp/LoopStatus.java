@@ -1,96 +1,86 @@
 package com.github.takayamaekawa.gcpot.gcp;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 
 import com.google.inject.Inject;
 
+import com.github.takayamaekawa.gcpot.common.AdaptiveInterval;
 import com.github.takayamaekawa.gcpot.common.Config;
-import com.github.takayamaekawa.gcpot.discord.Discord;
-import net.dv8tion.jda.api.entities.Activity;
+import com.github.takayamaekawa.gcpot.common.StatusHub;
+import com.github.takayamaekawa.gcpot.common.StatusSnapshot.State;
+import com.github.takayamaekawa.gcpot.common.TickScheduler;
 
 public class LoopStatus {
-  public static AtomicBoolean isRunning = new AtomicBoolean(false);
-  public static AtomicBoolean isFreezing = new AtomicBoolean(false);
+  // 起動・停止の途中で、状態がまだ確定していないGCEのステータス
+  private static final Set<String> TRANSITIONAL_STATUSES = Set.of("PROVISIONING", "STAGING", "STOPPING",
+      "SUSPENDING", "REPAIRING");
   private final Logger logger;
-  private final Config config;
   private final InstanceManager gcp;
-  private final Discord discord;
-  private final int period;
+  private final StatusHub statusHub;
+  private final AdaptiveInterval interval;
+  private final TickScheduler scheduler;
+  private final long jitter;
   private final CompletableFuture<Void> firstLoopCompleted = new CompletableFuture<>(); // 初回ループ完了を監視
+  private volatile TickScheduler.Job job = null;
 
   @Inject
-  public LoopStatus(Logger logger, Config config, InstanceManager gcp, Discord discord) {
+  public LoopStatus(Logger logger, Config config, InstanceManager gcp, StatusHub statusHub, TickScheduler scheduler) {
     this.logger = logger;
-    this.config = config;
     this.gcp = gcp;
-    this.discord = discord;
-    this.period = config.getInt("GCP.Status.Period", 20);
+    this.statusHub = statusHub;
+    this.scheduler = scheduler;
+    this.interval = AdaptiveInterval.fromConfig(config, "GCP.Status", 20);
+    this.jitter = config.getLong("GCP.Status.Jitter", 500);
+    gcp.addLifecycleListener(this::onLifecycleCommand);
   }
 
   public void start() {
-    Timer timer = new Timer();
-    timer.schedule(new TimerTask() {
-      @Override
-      public void run() {
-        updateStatus();
-      }
-    }, 0, 1000 * period);
+    // 前回の確認が終わってから、結果に応じた間隔で次の確認を予約する
+    job = scheduler.scheduleAdaptive("gcp.status", jitter, () -> updateStatus().thenApply(interval::next));
   }
 
-  public void updateStatus() {
-    List<CompletableFuture<Boolean>> futures = new ArrayList<>();
-    futures.add(gcp.isInstanceRunning());
-    futures.add(gcp.isInstanceFrozen());
-    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
-        .thenRun(() -> {
-          try {
-            Boolean isRunning2 = futures.get(0).get();
-            Boolean isFrozing2 = futures.get(1).get();
-            String activityStatus;
-            if (isRunning2) {
-              if (isFrozing2) {
-                activityStatus = config.getString("Discord.Presence.Activity.Freezing", "v1-Freezing!");
-                LoopStatus.isRunning.set(true);
-                LoopStatus.isFreezing.set(true);
-              } else {
-                activityStatus = config.getString("Discord.Presence.Activity.Running", "v1-Running");
-                LoopStatus.isRunning.set(true);
-                LoopStatus.isFreezing.set(false);
-              }
-            } else {
-              activityStatus = config.getString("Discord.Presence.Activity.Stopping", "v1-Stopping");
-              LoopStatus.isRunning.set(false);
-              LoopStatus.isFreezing.set(false);
-            }
+  // start/stop/resetが実行されたら、待機中の確認を前倒しして最小間隔で確認する
+  private void onLifecycleCommand() {
+    interval.boost();
+    TickScheduler.Job current = job;
+    if (current != null) {
+      current.trigger();
+    }
+  }
+
+  public CompletableFuture<AdaptiveInterval.Outcome> updateStatus() {
+    long startedAt = System.nanoTime();
+    return gcp.fetchSnapshot().thenCompose(snapshot -> {
+      boolean isRunning2 = snapshot.isRunning();
+      CompletableFuture<Boolean> frozen = isRunning2 ? gcp.isInstanceFrozen() : CompletableFuture.completedFuture(false);
+      return frozen.thenApply(isFrozing2 -> {
+        boolean changed = reflectStatus(State.of(isRunning2, isFrozing2), startedAt, null);
+        if (TRANSITIONAL_STATUSES.contains(snapshot.getStatus())) {
+          return AdaptiveInterval.Outcome.UNCONFIRMED;
+        }
 
-            // 初回のループが完了したことを通知
-            if (!firstLoopCompleted.isDone()) {
-              firstLoopCompleted.complete(null); // 完了フラグを立てる
-            } else {
-              Objects.requireNonNull(activityStatus);
-              discord.getJDA().getPresence().setActivity(Activity.playing(activityStatus));
-            }
-          } catch (InterruptedException | ExecutionException e) {
-            logger.error("Updating GCP server status error:", e.getMessage(), e);
+        return changed ? AdaptiveInterval.Outcome.CHANGED : AdaptiveInterval.Outcome.STABLE;
+      });
+    }).exceptionally(ex -> {
+      logger.error("Updating GCP server status error: " + ex.getMessage(), ex);
+      reflectStatus(State.STOPPED, startedAt, ex.getMessage());
+      return AdaptiveInterval.Outcome.ERROR;
+    });
+  }
 
-            if (firstLoopCompleted.isDone()) {
-              discord.getJDA().getPresence()
-                  .setActivity(Activity.playing(config.getString("Discord.Presence.Activity.Stopping", "v1-Stopping")));
-            }
+  private boolean reflectStatus(State state, long startedAt, String error) {
+    // 状態が変化したときだけ、プレゼンスやステータスメッセージへ配信される
+    long latency = (System.nanoTime() - startedAt) / 1_000_000;
+    boolean changed = statusHub.publish(state, latency, error);
 
-            LoopStatus.isRunning.set(false);
-            LoopStatus.isFreezing.set(false);
-          }
-        });
+    // 初回のループが完了したことを通知
+    if (!firstLoopCompleted.isDone()) {
+      firstLoopCompleted.complete(null); // 完了フラグを立てる
+    }
+    return changed;
   }
 
   public CompletableFuture<Void> getFirstLoopCompletionFuture() {
@@ -0,0 +1,102 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * インスタンスのメタデータ (内部IP/マシンタイプ/ステータス) を項目ごとのTTLでキャッシュする
+ * start/stop/resetの実行時には対象インスタンスのキャッシュを破棄する
+ */
+public class MetadataCache {
+  private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<Field, Long> ttls = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public enum Field {
+    NETWORK_IP("GCP.Cache.NetworkIpTtl", 600),
+    MACHINE_TYPE("GCP.Cache.MachineTypeTtl", 3600),
+    STATUS("GCP.Cache.StatusTtl", 60);
+
+    private final String configKey;
+    private final int defaultTtl;
+
+    Field(String configKey, int defaultTtl) {
+      this.configKey = configKey;
+      this.defaultTtl = defaultTtl;
+    }
+  }
+
+  private record Key(InstanceTarget target, Field field) {
+  }
+
+  private record Entry(String value, long storedAt) {
+  }
+
+  @Inject
+  public MetadataCache(Config config) {
+    for (Field field : Field.values()) {
+      ttls.put(field, 1000L * config.getInt(field.configKey, field.defaultTtl));
+    }
+
+    Metrics.gauge("gcp.metadata.hitRate", () -> String.format("%.3f", getHitRate()));
+    Metrics.gauge("gcp.metadata.entries", entries::size);
+  }
+
+  public Optional<String> get(InstanceTarget target, Field field) {
+    Entry entry = entries.get(new Key(target, field));
+    if (entry == null || System.currentTimeMillis() - entry.storedAt() >= ttls.get(field)) {
+      misses.increment();
+      Metrics.increment("gcp.metadata.miss");
+      return Optional.empty();
+    }
+
+    hits.increment();
+    Metrics.increment("gcp.metadata.hit");
+    return Optional.of(entry.value());
+  }
+
+  public void put(InstanceTarget target, Field field, String value) {
+    if (value == null || value.isEmpty()) {
+      entries.remove(new Key(target, field));
+      return;
+    }
+
+    entries.put(new Key(target, field), new Entry(value, System.currentTimeMillis()));
+  }
+
+  /**
+   * 取得したインスタンス情報から全項目を更新する
+   */
+  public void putAll(InstanceTarget target, InstanceSnapshot snapshot) {
+    put(target, Field.NETWORK_IP, snapshot.getNetworkIP());
+    put(target, Field.MACHINE_TYPE, snapshot.instance().getMachineType());
+    put(target, Field.STATUS, snapshot.getStatus());
+  }
+
+  public void invalidate(InstanceTarget target) {
+    entries.keySet().removeIf(key -> key.target().equals(target));
+  }
+
+  public final double getHitRate() {
+    long hit = hits.sum();
+    long total = hit + misses.sum();
+    return total == 0 ? 0.0 : (double) hit / total;
+  }
+
+  /**
+   * エントリーが保存されてからの経過時間 (ミリ秒)
+   */
+  public OptionalLong getAge(InstanceTarget target, Field field) {
+    Entry entry = entries.get(new Key(target, field));
+    return entry == null ? OptionalLong.empty() : OptionalLong.of(System.currentTimeMillis() - entry.storedAt());
+  }
+}
@@ -0,0 +1,151 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.longrunning.OperationFuture;
+import com.google.cloud.compute.v1.Operation;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * GCEの操作 (start/stop/reset) をスレッドをブロックせずに追跡する
+ * 完了はOperationFutureへのコールバックで受け取り、進捗は小さなスケジューラで定期的に確認する
+ */
+public class OperationTracker {
+  private final Logger logger;
+  private final long progressInterval;
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, Progress> active = new ConcurrentHashMap<>();
+  private final List<Consumer<Progress>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "gce-operation-tracker");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * 操作の進捗
+   * 
+   * @param id       追跡ID
+   * @param kind     操作の種類 (start/stop/reset)
+   * @param target   対象のインスタンス
+   * @param progress GCEが報告する進捗 (0-100)
+   * @param status   GCEが報告する状態 (PENDING/RUNNING/DONE)
+   * @param elapsed  操作開始からの経過時間
+   */
+  public record Progress(String id, String kind, InstanceTarget target, int progress, String status,
+      Duration elapsed) {
+  }
+
+  @Inject
+  public OperationTracker(Logger logger, Config config) {
+    this.logger = logger;
+    this.progressInterval = config.getInt("GCP.Operation.ProgressInterval", 5);
+    Metrics.gauge("gcp.operations.active", active::size);
+  }
+
+  /**
+   * 進捗と完了 (statusがDONEかFAILED) を受け取るリスナーを登録する
+   */
+  public void addProgressListener(Consumer<Progress> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * 操作の完了を追跡する
+   * 
+   * @return エラーなく完了した場合にtrueとなるFuture
+   */
+  public CompletableFuture<Boolean> track(String kind, InstanceTarget target,
+      OperationFuture<Operation, Operation> operationFuture) {
+    String id = kind + "-" + sequence.incrementAndGet();
+    long startedAt = System.nanoTime();
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    active.put(id, new Progress(id, kind, target, 0, "PENDING", Duration.ZERO));
+
+    // 直近のポーリング結果を覗くだけなので、追加のAPI呼び出しは発生しない
+    ScheduledFuture<?> poller = scheduler.scheduleWithFixedDelay(() -> {
+      ApiFutures.addCallback(operationFuture.peekMetadata(), new ApiFutureCallback<Operation>() {
+        @Override
+        public void onSuccess(Operation operation) {
+          if (operation != null) {
+            report(new Progress(id, kind, target, operation.getProgress(), operation.getStatus().name(),
+                Duration.ofNanos(System.nanoTime() - startedAt)));
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          // 完了時のコールバックで扱う
+        }
+      }, MoreExecutors.directExecutor());
+    }, progressInterval, progressInterval, TimeUnit.SECONDS);
+
+    ApiFutures.addCallback(operationFuture, new ApiFutureCallback<Operation>() {
+      @Override
+      public void onSuccess(Operation operation) {
+        poller.cancel(false);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        com.google.cloud.compute.v1.Error errorStatus = operation.getError();
+        // 操作が完了しており、エラーがない場合
+        if (errorStatus.getErrorsCount() == 0) {
+          logger.info("Instance " + kind + " successful: " + target + " (" + elapsed.toMillis() + "ms)");
+          complete(new Progress(id, kind, target, 100, "DONE", elapsed));
+          result.complete(true);
+        } else {
+          logger.error(kind + " failed: " + errorStatus.toString());
+          complete(new Progress(id, kind, target, operation.getProgress(), "FAILED", elapsed));
+          result.complete(false);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        poller.cancel(false);
+        logger.error(kind + " error: " + t.getMessage(), t);
+        complete(new Progress(id, kind, target, 0, "FAILED", Duration.ofNanos(System.nanoTime() - startedAt)));
+        result.complete(false);
+      }
+    }, MoreExecutors.directExecutor());
+
+    return result;
+  }
+
+  private void report(Progress progress) {
+    // 完了後に遅れて届いた進捗は無視する
+    if (active.replace(progress.id(), progress) == null) {
+      return;
+    }
+
+    logger.info("GCE " + progress.kind() + " " + progress.target() + ": " + progress.status() + " "
+        + progress.progress() + "% (" + progress.elapsed().toSeconds() + "s)");
+    listeners.forEach(listener -> listener.accept(progress));
+  }
+
+  private void complete(Progress progress) {
+    active.remove(progress.id());
+    listeners.forEach(listener -> listener.accept(progress));
+  }
+
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
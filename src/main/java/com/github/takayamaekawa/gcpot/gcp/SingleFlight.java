@@ -0,0 +1,96 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
+/**
+ * 同じ取得処理を同時に1つだけ実行し、完了後も鮮度の範囲内は結果を共有する
+ * invalidateのたびに世代が進み、それより前に始まった取得は共有されなくなる
+ */
+class SingleFlight<T> {
+  private final long freshnessMillis;
+  private final AtomicReference<Flight<T>> current = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  private static final class Flight<T> {
+    private final long generation;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private volatile long completedAt;
+
+    private Flight(long generation) {
+      this.generation = generation;
+    }
+  }
+
+  SingleFlight(long freshnessMillis) {
+    this.freshnessMillis = freshnessMillis;
+  }
+
+  /**
+   * @param loader 取得処理 (開始時の世代を受け取る。結果を反映する前にisCurrentで確認する)
+   */
+  CompletableFuture<T> get(LongFunction<CompletableFuture<T>> loader) {
+    while (true) {
+      Flight<T> flight = current.get();
+      if (flight != null && isReusable(flight)) {
+        return flight.future;
+      }
+
+      Flight<T> next = new Flight<>(generation.get());
+      if (current.compareAndSet(flight, next)) {
+        CompletableFuture<T> loading;
+        try {
+          loading = loader.apply(next.generation);
+        } catch (RuntimeException e) {
+          // 同期的に失敗した場合も、相乗りした呼び出しが永遠に待たないように完了させて枠を空ける
+          next.completedAt = System.currentTimeMillis();
+          next.future.completeExceptionally(e);
+          current.compareAndSet(next, null);
+          return next.future;
+        }
+
+        loading.whenComplete((result, ex) -> {
+          next.completedAt = System.currentTimeMillis();
+          if (ex != null) {
+            next.future.completeExceptionally(ex);
+          } else {
+            next.future.complete(result);
+          }
+        });
+        return next.future;
+      }
+    }
+  }
+
+  /**
+   * 世代を進め、次の呼び出しで必ず取得し直すようにする (実行中の取得にも相乗りしない)
+   */
+  void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * 指定した世代の後にinvalidateされていなければtrue
+   */
+  boolean isCurrent(long loadedGeneration) {
+    return generation.get() == loadedGeneration;
+  }
+
+  private boolean isReusable(Flight<T> flight) {
+    if (flight.generation != generation.get()) {
+      return false;
+    }
+
+    if (!flight.future.isDone()) {
+      return true; // 実行中の取得に相乗りする
+    }
+
+    if (flight.future.isCompletedExceptionally()) {
+      return false;
+    }
+
+    return System.currentTimeMillis() - flight.completedAt < freshnessMillis;
+  }
+}
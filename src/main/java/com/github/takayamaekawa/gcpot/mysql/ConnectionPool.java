@@ -0,0 +1,234 @@
+package com.github.takayamaekawa.gcpot.mysql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.common.Metrics;
+
+/**
+ * ホストごとの小さなJDBCコネクションプール
+ * 貸し出し時に接続を検証し、最大寿命を超えた接続やIdleTimeout秒使われていない接続は閉じる
+ * (GCEの内部IPが変わって使われなくなったホストのプールも、空になったら破棄する)
+ * 借りた接続のclose()はプールへの返却になる
+ */
+public class ConnectionPool {
+  private final Logger logger;
+  private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+  private final int maxSize, validationTimeout;
+  private final long idleTimeoutMillis, maxLifetimeMillis, borrowTimeoutMillis;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong lastWaitMillis = new AtomicLong();
+  private final AtomicLong maxWaitMillis = new AtomicLong();
+
+  private static final class Pooled {
+    private final Connection physical;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long lastUsedAt = createdAt;
+
+    private Pooled(Connection physical) {
+      this.physical = physical;
+    }
+  }
+
+  private final class HostPool {
+    private final String url;
+    private final Semaphore permits = new Semaphore(maxSize, true);
+    private final Deque<Pooled> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed = false;
+
+    private HostPool(String url) {
+      this.url = url;
+    }
+  }
+
+  @Inject
+  public ConnectionPool(Logger logger, Config config) {
+    this.logger = logger;
+    this.maxSize = Math.max(1, config.getInt("MySQL.Pool.MaxSize", 4));
+    this.idleTimeoutMillis = 1000L * config.getLong("MySQL.Pool.IdleTimeout", 300);
+    this.maxLifetimeMillis = 1000L * config.getLong("MySQL.Pool.MaxLifetime", 1800);
+    this.borrowTimeoutMillis = config.getLong("MySQL.Pool.BorrowTimeout", 5000);
+    this.validationTimeout = config.getInt("MySQL.Pool.ValidationTimeout", 2);
+    Metrics.gauge("mysql.pool.active", active::get);
+    Metrics.gauge("mysql.pool.idle", () -> pools.values().stream().mapToInt(pool -> pool.idle.size()).sum());
+    Metrics.gauge("mysql.pool.hosts", pools::size);
+    Metrics.gauge("mysql.pool.lastWaitMillis", lastWaitMillis::get);
+    Metrics.gauge("mysql.pool.maxWaitMillis", maxWaitMillis::get);
+  }
+
+  /**
+   * 接続を借りる (BorrowTimeoutミリ秒以内に空きがなければSQLTransientConnectionException)
+   */
+  public Connection borrow(String host, String url, String user, String password) throws SQLException {
+    // 内部IPが取得できなかった場合など
+    if (host == null) {
+      throw new SQLException("MySQL host is not available");
+    }
+
+    evictIdle();
+    long start = System.nanoTime();
+    HostPool pool;
+    while (true) {
+      pool = pools.computeIfAbsent(host, key -> new HostPool(url));
+      try {
+        if (!pool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          Metrics.increment("mysql.pool.timeouts");
+          throw new SQLTransientConnectionException("Timed out waiting for a connection to " + host);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLTransientConnectionException("Interrupted while waiting for a connection to " + host, e);
+      }
+
+      // 取得してから枠を得るまでの間に破棄されたプールであれば、新しいプールで借り直す
+      if (!pool.closed) {
+        break;
+      }
+      pool.permits.release();
+    }
+
+    long wait = (System.nanoTime() - start) / 1_000_000;
+    lastWaitMillis.set(wait);
+    maxWaitMillis.accumulateAndGet(wait, Math::max);
+
+    try {
+      Pooled pooled;
+      while ((pooled = pool.idle.pollFirst()) != null) {
+        if (isExpired(pooled) || !pooled.physical.isValid(validationTimeout)) {
+          Metrics.increment("mysql.pool.validationFailures");
+          closeQuietly(pooled);
+          continue;
+        }
+        return lend(pool, pooled);
+      }
+
+      Metrics.increment("mysql.pool.created");
+      return lend(pool, new Pooled(DriverManager.getConnection(pool.url, user, password)));
+    } catch (SQLException | RuntimeException e) {
+      pool.permits.release();
+      throw e;
+    }
+  }
+
+  private Connection lend(HostPool pool, Pooled pooled) {
+    active.incrementAndGet();
+    AtomicBoolean returned = new AtomicBoolean(false);
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "close" -> {
+              if (returned.compareAndSet(false, true)) {
+                giveBack(pool, pooled);
+              }
+              return null;
+            }
+            case "isClosed" -> {
+              return returned.get() || pooled.physical.isClosed();
+            }
+            default -> {
+              if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+              }
+              try {
+                return method.invoke(pooled.physical, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            }
+          }
+        });
+  }
+
+  private void giveBack(HostPool pool, Pooled pooled) {
+    active.decrementAndGet();
+    try {
+      boolean reusable = !pool.closed && !isExpired(pooled) && !pooled.physical.isClosed();
+      if (reusable && !pooled.physical.getAutoCommit()) {
+        pooled.physical.rollback();
+        pooled.physical.setAutoCommit(true);
+      }
+
+      if (reusable) {
+        pooled.lastUsedAt = System.currentTimeMillis();
+        pool.idle.addFirst(pooled);
+      } else {
+        closeQuietly(pooled);
+      }
+    } catch (SQLException e) {
+      closeQuietly(pooled);
+    } finally {
+      pool.permits.release();
+    }
+  }
+
+  // 借りるついでに、使われていない接続と空になったホストのプールを片付ける (専用のスレッドは持たない)
+  private void evictIdle() {
+    long now = System.currentTimeMillis();
+    for (String host : pools.keySet()) {
+      pools.computeIfPresent(host, (key, pool) -> {
+        for (Pooled pooled : pool.idle) {
+          // 同時に貸し出されたものは閉じない
+          if ((now - pooled.lastUsedAt >= idleTimeoutMillis || isExpired(pooled)) && pool.idle.remove(pooled)) {
+            Metrics.increment("mysql.pool.evicted");
+            closeQuietly(pooled);
+          }
+        }
+
+        // 全ての枠を押さえられたときだけ (=貸し出し中も借りようとしている途中もない) プールを破棄する
+        if (!pool.idle.isEmpty() || !pool.permits.tryAcquire(maxSize)) {
+          return pool;
+        }
+
+        boolean retire = pool.idle.isEmpty();
+        pool.closed = retire;
+        pool.permits.release(maxSize);
+        if (retire) {
+          logger.info("MySQLのコネクションプールを破棄しました: " + key);
+          return null;
+        }
+        return pool;
+      });
+    }
+  }
+
+  private boolean isExpired(Pooled pooled) {
+    return System.currentTimeMillis() - pooled.createdAt >= maxLifetimeMillis;
+  }
+
+  private void closeQuietly(Pooled pooled) {
+    try {
+      pooled.physical.close();
+    } catch (SQLException e) {
+      logger.error("A mysql close error occurred: " + e.getMessage());
+    }
+  }
+
+  public void close() {
+    pools.values().forEach(pool -> {
+      pool.closed = true;
+      Pooled pooled;
+      while ((pooled = pool.idle.pollFirst()) != null) {
+        closeQuietly(pooled);
+      }
+    });
+    pools.clear();
+  }
+}
@@ -1,11 +1,14 @@
 package com.github.takayamaekawa.gcpot.mysql;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 
@@ -16,14 +19,16 @@ import com.github.takayamaekawa.gcpot.common.Config;
 public class Database implements DatabaseInterface {
   private final Config config;
   private final Logger logger;
-  private Connection conn = null;
+  private final ConnectionPool pool;
+  private static final ExecutorService borrower = Executors.newVirtualThreadPerTaskExecutor();
   public ResultSet mine_status = null;
   public ResultSet[] resultsets = { mine_status };
 
   @Inject
-  public Database(Logger logger, Config config) {
+  public Database(Logger logger, Config config, ConnectionPool pool) {
     this.logger = logger;
     this.config = config;
+    this.pool = pool;
   }
 
   @Override
@@ -40,23 +45,40 @@ public class Database implements DatabaseInterface {
       return null;
     }
 
-    if (Objects.nonNull(conn) && !conn.isClosed())
-      return conn;
-
-    synchronized (Database.class) {
-      if (Objects.nonNull(conn) && !conn.isClosed())
-        return conn;
+    // 再接続はプール側で行うので、autoReconnectは使わない
+    // 毎回のステータス取得で同じクエリを使うので、サーバー側のプリペアドステートメントを接続ごとにキャッシュする
+    Class.forName("com.mysql.cj.jdbc.Driver");
+    return pool.borrow(host, "jdbc:mysql://" + host + ":" + port + "/" + database
+        + "?useServerPrepStmts=true&cachePrepStmts=true", user, password);
+  }
 
-      Class.forName("com.mysql.cj.jdbc.Driver");
-      conn = DriverManager.getConnection(
-          "jdbc:mysql://" + host + ":" +
-              port + "/" +
-              database + "?autoReconnect=true",
-          user,
-          password);
+  @Override
+  public CompletableFuture<Connection> getConnectionAsync(String host) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return getConnection(host);
+      } catch (SQLException | ClassNotFoundException e) {
+        throw new CompletionException(e);
+      }
+    }, borrower);
+  }
 
-      return conn;
-    }
+  /**
+   * 接続を非同期に借りて処理を行い、終わったら返す
+   * JDBCの処理は呼び出し元 (gRPCのコールバックなど) のスレッドではなく、仮想スレッドで行う
+   */
+  @Override
+  public <T> CompletableFuture<T> withConnectionAsync(String host, SqlFunction<T> work) {
+    return getConnectionAsync(host).thenApplyAsync(conn -> {
+      try (conn) {
+        if (conn == null) {
+          throw new SQLException("データベースサーバへの接続に失敗しました");
+        }
+        return work.apply(conn);
+      } catch (SQLException e) {
+        throw new CompletionException(e);
+      }
+    }, borrower);
   }
 
   @Override
@@ -76,7 +98,7 @@ public class Database implements DatabaseInterface {
       }
     }
 
-    if (Objects.nonNull(conn)) {
+    if (Objects.nonNull(ps)) {
       try {
         ps.close();
       } catch (SQLException e) {
@@ -87,7 +109,8 @@ public class Database implements DatabaseInterface {
       }
     }
 
-    if (Objects.nonNull(ps)) {
+    // プールから借りた接続なので、closeはプールへの返却になる
+    if (Objects.nonNull(conn)) {
       try {
         conn.close();
       } catch (SQLException e) {
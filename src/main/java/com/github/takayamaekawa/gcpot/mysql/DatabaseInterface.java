@@ -4,9 +4,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public interface DatabaseInterface {
   Connection getConnection(String host) throws SQLException, ClassNotFoundException;
 
+  CompletableFuture<Connection> getConnectionAsync(String host);
+
+  <T> CompletableFuture<T> withConnectionAsync(String host, SqlFunction<T> work);
+
+  @FunctionalInterface
+  interface SqlFunction<T> {
+    T apply(Connection conn) throws SQLException;
+  }
+
   void close_resorce(ResultSet[] resultsets, Connection conn, PreparedStatement ps);
 }
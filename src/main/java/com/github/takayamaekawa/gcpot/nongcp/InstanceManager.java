@@ -1,10 +1,8 @@
 package com.github.takayamaekawa.gcpot.nongcp;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
@@ -12,39 +10,83 @@ import org.slf4j.Logger;
 import com.google.inject.Inject;
 
 import com.github.takayamaekawa.gcpot.common.Config;
+import com.github.takayamaekawa.gcpot.probe.FreezeDetector;
+import com.github.takayamaekawa.gcpot.probe.HttpProbe;
+import com.github.takayamaekawa.gcpot.probe.ServerListPing;
 
 public class InstanceManager {
   private final String webHost;
-  private final Logger logger;
+  private final HttpProbe httpProbe;
+  private final ServerListPing serverListPing;
+  private final List<Server> servers;
   // private final Config config;
 
+  /**
+   * Server List Pingで問い合わせるサーバー
+   * 
+   * @param name 表示名
+   * @param host ホスト
+   * @param port ポート
+   */
+  public record Server(String name, String host, int port) {
+  }
+
+  /**
+   * 問い合わせたサーバーとその結果
+   */
+  public record ServerStatus(Server server, ServerListPing.Result result) {
+  }
+
   @Inject
-  public InstanceManager(Logger logger, Config config) {
-    this.logger = logger;
+  public InstanceManager(Logger logger, Config config, HttpProbe httpProbe, ServerListPing serverListPing) {
+    this.httpProbe = httpProbe;
+    this.serverListPing = serverListPing;
     // this.config = config;
     this.webHost = config.getString("Common.WebHost", "localhost");
+
+    List<Server> loaded = new ArrayList<>();
+    Object serversObject = config.getNestedValue("NonGCP.Servers");
+    if (serversObject instanceof List<?> serverList) {
+      for (Object entry : serverList) {
+        Map<String, Object> serverMap = config.getStringObjectMap(entry);
+        if (serverMap != null && serverMap.get("Name") instanceof String name && serverMap.get("Host") instanceof String host
+            && !host.isEmpty()) {
+          int port = serverMap.get("Port") instanceof Number number ? number.intValue() : 25565;
+          loaded.add(new Server(name, host, port));
+        } else {
+          logger.error("Invalid NonGCP.Servers entry: " + entry);
+        }
+      }
+    }
+
+    this.servers = List.copyOf(loaded);
+  }
+
+  public List<Server> getServers() {
+    return servers;
+  }
+
+  /**
+   * NonGCP.Serversの全サーバーへ同時に問い合わせる
+   */
+  public CompletableFuture<List<ServerStatus>> pingServers() {
+    List<CompletableFuture<ServerStatus>> futures = servers.stream()
+        .map(server -> serverListPing.ping(server.host(), server.port())
+            .thenApply(result -> new ServerStatus(server, result)))
+        .toList();
+    return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+        .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
   }
 
+  /**
+   * NonGCP.Serversが設定されていればいずれかのサーバーが応答するか、なければWEBサーバーが応答するかを確認する
+   */
   public CompletableFuture<Boolean> isServerResponding() {
-    CompletableFuture<Boolean> future = new CompletableFuture<>();
-    try {
-      // URIを使ってURLを作成
-      URI uri = new URI("https", webHost, "/", null);
-      URL url = uri.toURL(); // URLに変換
-      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("GET");
-      connection.setConnectTimeout(5000);
-      connection.setReadTimeout(5000);
-      int responseCode = connection.getResponseCode();
-      boolean is200 = responseCode == 200;
-      future.complete(is200);
-      return future;
-    } catch (IOException | IllegalArgumentException | URISyntaxException e) {
-      // logger.error("An isServerResponding error occurred: " + e.getMessage(), e);
-      logger.info("現在WEBサーバーにアクセスできません。");
-      future.complete(false);
-      return future;
+    if (!servers.isEmpty()) {
+      return pingServers().thenApply(statuses -> statuses.stream().anyMatch(status -> status.result().online()));
     }
+
+    return httpProbe.probe(webHost).thenApply(FreezeDetector.Sample::ok);
   }
 
   /*
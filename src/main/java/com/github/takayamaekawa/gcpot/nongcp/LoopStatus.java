@@ -1,87 +1,63 @@
 package com.github.takayamaekawa.gcpot.nongcp;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 
 import com.google.inject.Inject;
 
+import com.github.takayamaekawa.gcpot.common.AdaptiveInterval;
 import com.github.takayamaekawa.gcpot.common.Config;
-import com.github.takayamaekawa.gcpot.discord.Discord;
-import net.dv8tion.jda.api.entities.Activity;
+import com.github.takayamaekawa.gcpot.common.StatusHub;
+import com.github.takayamaekawa.gcpot.common.StatusSnapshot.State;
+import com.github.takayamaekawa.gcpot.common.TickScheduler;
 
 public class LoopStatus {
-  public static AtomicBoolean isRunning = new AtomicBoolean(false);
-  public static AtomicBoolean isFreezing = new AtomicBoolean(false);
   private final Logger logger;
-  private final Config config;
   private final InstanceManager nongcp;
-  private final Discord discord;
-  private final int period;
+  private final StatusHub statusHub;
+  private final AdaptiveInterval interval;
+  private final TickScheduler scheduler;
+  private final long jitter;
   private final CompletableFuture<Void> firstLoopCompleted = new CompletableFuture<>(); // 初回ループ完了を監視
 
   @Inject
-  public LoopStatus(Logger logger, Config config, InstanceManager nongcp, Discord discord) {
+  public LoopStatus(Logger logger, Config config, InstanceManager nongcp, StatusHub statusHub, TickScheduler scheduler) {
     this.logger = logger;
-    this.config = config;
     this.nongcp = nongcp;
-    this.discord = discord;
-    this.period = config.getInt("NonGCP.Status.Period", 20);
+    this.statusHub = statusHub;
+    this.scheduler = scheduler;
+    this.interval = AdaptiveInterval.fromConfig(config, "NonGCP.Status", 20);
+    this.jitter = config.getLong("NonGCP.Status.Jitter", 500);
   }
 
   public void start() {
-    Timer timer = new Timer();
-    timer.schedule(new TimerTask() {
-      @Override
-      public void run() {
-        updateStatus();
-      }
-    }, 0, 1000 * period);
+    // 前回の確認が終わってから、結果に応じた間隔で次の確認を予約する
+    scheduler.scheduleAdaptive("nongcp.status", jitter, () -> updateStatus().thenApply(interval::next));
   }
 
-  public void updateStatus() {
-    List<CompletableFuture<Boolean>> futures = new ArrayList<>();
-    futures.add(nongcp.isServerResponding());
-    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
-        .thenRun(() -> {
-          try {
-            Boolean isRunning2 = futures.get(0).get();
-            String activityStatus;
-            if (isRunning2) {
-              activityStatus = config.getString("Discord.Presence.Activity.Running", "v1-Running");
-              LoopStatus.isRunning.set(true);
-              LoopStatus.isFreezing.set(false);
-            } else {
-              activityStatus = config.getString("Discord.Presence.Activity.Stopping", "v1-Stopping");
-              LoopStatus.isRunning.set(false);
-              LoopStatus.isFreezing.set(false);
-            }
-
-            // 初回のループが完了したことを通知
-            if (!firstLoopCompleted.isDone()) {
-              firstLoopCompleted.complete(null); // 完了フラグを立てる
-            } else {
-              Objects.requireNonNull(activityStatus);
-              discord.getJDA().getPresence().setActivity(Activity.playing(activityStatus));
-            }
-          } catch (InterruptedException | ExecutionException e) {
-            logger.error("Updating NonGCP server status error:", e.getMessage(), e);
+  public CompletableFuture<AdaptiveInterval.Outcome> updateStatus() {
+    long startedAt = System.nanoTime();
+    return nongcp.isServerResponding().thenApply(isRunning2 -> {
+      boolean changed = reflectStatus(State.of(isRunning2, false), startedAt, null);
+      return changed ? AdaptiveInterval.Outcome.CHANGED : AdaptiveInterval.Outcome.STABLE;
+    }).exceptionally(ex -> {
+      logger.error("Updating NonGCP server status error: " + ex.getMessage(), ex);
+      reflectStatus(State.STOPPED, startedAt, ex.getMessage());
+      return AdaptiveInterval.Outcome.ERROR;
+    });
+  }
 
-            if (firstLoopCompleted.isDone()) {
-              discord.getJDA().getPresence()
-                  .setActivity(Activity.playing(config.getString("Discord.Presence.Activity.Stopping", "v1-Stopping")));
-            }
+  private boolean reflectStatus(State state, long startedAt, String error) {
+    // 状態が変化したときだけ、プレゼンスやステータスメッセージへ配信される
+    long latency = (System.nanoTime() - startedAt) / 1_000_000;
+    boolean changed = statusHub.publish(state, latency, error);
 
-            LoopStatus.isRunning.set(false);
-          }
-        });
+    // 初回のループが完了したことを通知
+    if (!firstLoopCompleted.isDone()) {
+      firstLoopCompleted.complete(null); // 完了フラグを立てる
+    }
+    return changed;
   }
 
   public CompletableFuture<Void> getFirstLoopCompletionFuture() {
@@ -0,0 +1,128 @@
+package com.github.takayamaekawa.gcpot.probe;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+
+/**
+ * 複数のプローブ結果をスライディングウィンドウで集計してスコア化し、フリーズを判定する
+ * スコアが閾値を超えた状態がK回連続したらフリーズとし、解除には低い方の閾値をK回連続で下回る必要がある (ヒステリシス)
+ * ただし、WEBサーバーが応答している間はフリーズとしない
+ */
+public class FreezeDetector {
+  private final Map<Signal, RingBuffer> windows = new EnumMap<>(Signal.class);
+  private final Map<Signal, Long> slowMillis = new EnumMap<>(Signal.class);
+  private final double enterScore, exitScore;
+  private final int consecutive;
+  private int streak = 0;
+  private boolean frozen = false;
+  private double score = 0.0;
+
+  public enum Signal {
+    HTTP("Http", 2.0, 2000),
+    TCP("Tcp", 1.0, 1000),
+    MINECRAFT("Minecraft", 2.0, 2000);
+
+    private final String configKey;
+    private final double weight;
+    private final long defaultSlowMillis;
+
+    Signal(String configKey, double weight, long defaultSlowMillis) {
+      this.configKey = configKey;
+      this.weight = weight;
+      this.defaultSlowMillis = defaultSlowMillis;
+    }
+  }
+
+  /**
+   * 1回のプローブ結果
+   * 
+   * @param ok            応答があったかどうか
+   * @param latencyMillis 応答までの時間 (ミリ秒)
+   */
+  public record Sample(boolean ok, long latencyMillis) {
+
+    public static Sample failed(long latencyMillis) {
+      return new Sample(false, latencyMillis);
+    }
+  }
+
+  /**
+   * コンフィグから作成する
+   * 
+   * @param config コンフィグ
+   * @param prefix キーの接頭辞 (例: "GCP.Health")
+   */
+  public FreezeDetector(Config config, String prefix) {
+    int window = config.getInt(prefix + ".Window", 6);
+    for (Signal signal : Signal.values()) {
+      windows.put(signal, new RingBuffer(window));
+      slowMillis.put(signal, config.getLong(prefix + "." + signal.configKey + "SlowMillis", signal.defaultSlowMillis));
+    }
+
+    this.enterScore = config.getDouble(prefix + ".EnterScore", 0.6);
+    this.exitScore = config.getDouble(prefix + ".ExitScore", 0.3);
+    this.consecutive = config.getInt(prefix + ".Consecutive", 3);
+  }
+
+  /**
+   * プローブ結果を記録して、フリーズ状態を判定する
+   * 
+   * @param samples 今回のプローブ結果 (実行しなかったプローブは含めない)
+   * @return フリーズしていると判定した場合true
+   */
+  public synchronized boolean record(Map<Signal, Sample> samples) {
+    samples.forEach((signal, sample) -> windows.get(signal).add(badness(signal, sample)));
+
+    double weighted = 0.0, weights = 0.0;
+    for (Map.Entry<Signal, RingBuffer> entry : windows.entrySet()) {
+      if (entry.getValue().size() > 0) {
+        weighted += entry.getKey().weight * entry.getValue().mean();
+        weights += entry.getKey().weight;
+      }
+    }
+
+    score = weights == 0.0 ? 0.0 : weighted / weights;
+
+    // 現在の状態と逆の判定がK回連続したときだけ切り替える
+    // (TCP/Minecraftだけが失敗している場合はポートの設定違いの可能性があるので、HTTPも悪いときだけフリーズとする)
+    RingBuffer http = windows.get(Signal.HTTP);
+    boolean httpBad = http.size() == 0 || http.mean() >= 0.5;
+    boolean crossed = frozen ? score <= exitScore : score >= enterScore && httpBad;
+    streak = crossed ? streak + 1 : 0;
+    if (streak >= consecutive) {
+      frozen = !frozen;
+      streak = 0;
+    }
+
+    return frozen;
+  }
+
+  // 失敗は1.0、遅い応答は0.5、正常な応答は0.0として数える
+  private double badness(Signal signal, Sample sample) {
+    if (!sample.ok()) {
+      return 1.0;
+    }
+
+    return sample.latencyMillis() > slowMillis.get(signal) ? 0.5 : 0.0;
+  }
+
+  public synchronized double getScore() {
+    return score;
+  }
+
+  public synchronized boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * 起動・停止などで状態が変わったときに、過去のプローブ結果を捨てる
+   */
+  public synchronized void reset() {
+    windows.values().forEach(RingBuffer::clear);
+    streak = 0;
+    frozen = false;
+    score = 0.0;
+  }
+}
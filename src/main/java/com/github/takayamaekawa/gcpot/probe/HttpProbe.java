@@ -0,0 +1,93 @@
+package com.github.takayamaekawa.gcpot.probe;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+
+/**
+ * 共有のHttpClientでWEBサーバーの応答を非同期に確認する
+ * コネクションとTLSセッションを使い回すので、毎回のハンドシェイクが発生しない
+ */
+public class HttpProbe {
+  private final Logger logger;
+  private final String method;
+  private final Duration timeout;
+  private final HttpClient client;
+
+  @Inject
+  public HttpProbe(Logger logger, Config config) {
+    this.logger = logger;
+    this.method = config.getString("Common.Probe.Method", "GET").toUpperCase();
+    this.timeout = Duration.ofMillis(config.getInt("Common.Probe.Timeout", 5000));
+    this.client = HttpClient.newBuilder()
+        .connectTimeout(timeout)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+  }
+
+  /**
+   * https://{host}/ にリクエストを送り、2xxが返ってくるかと応答時間を調べる
+   * 
+   * @param host 確認するホスト (例: "example.com")
+   * @return プローブ結果 (呼び出し元のスレッドはブロックしない)
+   */
+  public CompletableFuture<FreezeDetector.Sample> probe(String host) {
+    return probe(host, timeout);
+  }
+
+  /**
+   * @param deadline このプローブの応答期限
+   */
+  public CompletableFuture<FreezeDetector.Sample> probe(String host, Duration deadline) {
+    URI uri;
+    HttpRequest request;
+    try {
+      uri = new URI("https", host, "/", null);
+      request = request(uri, method, deadline);
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      logger.error("Invalid probe host: " + host, e);
+      return CompletableFuture.completedFuture(FreezeDetector.Sample.failed(0));
+    }
+
+    long start = System.nanoTime();
+    return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+        .thenCompose(response -> {
+          // HEADに対応していないサーバー (405/501) はGETで確認し直す
+          int status = response.statusCode();
+          if (method.equals("HEAD") && (status == 405 || status == 501)) {
+            return client.sendAsync(request(uri, "GET", deadline), HttpResponse.BodyHandlers.discarding());
+          }
+
+          return CompletableFuture.completedFuture(response);
+        })
+        .handle((response, ex) -> {
+          long latency = (System.nanoTime() - start) / 1_000_000;
+          if (ex != null || response.statusCode() / 100 != 2) {
+            // logger.error("An isServerResponding error occurred: " + ex.getMessage(), ex);
+            logger.info("現在WEBサーバーにアクセスできません。");
+            return FreezeDetector.Sample.failed(latency);
+          }
+
+          return new FreezeDetector.Sample(true, latency);
+        });
+  }
+
+  private HttpRequest request(URI uri, String method, Duration deadline) {
+    return HttpRequest.newBuilder(uri)
+        .method(method, HttpRequest.BodyPublishers.noBody())
+        .timeout(deadline)
+        .build();
+  }
+}
@@ -0,0 +1,48 @@
+package com.github.takayamaekawa.gcpot.probe;
+
+/**
+ * 固定長のリングバッファ (古い値から上書きされる)
+ */
+public class RingBuffer {
+  private final double[] values;
+  private int head = 0;
+  private int size = 0;
+
+  public RingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+
+    this.values = new double[capacity];
+  }
+
+  public void add(double value) {
+    values[head] = value;
+    head = (head + 1) % values.length;
+    if (size < values.length) {
+      size++;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double mean() {
+    if (size == 0) {
+      return 0.0;
+    }
+
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+
+    return sum / size;
+  }
+
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+}
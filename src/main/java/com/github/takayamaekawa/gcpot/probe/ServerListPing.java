@@ -0,0 +1,320 @@
+package com.github.takayamaekawa.gcpot.probe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+import com.google.inject.Inject;
+
+import com.github.takayamaekawa.gcpot.common.Config;
+
+/**
+ * MinecraftのServer List Ping (ハンドシェイク + ステータス要求) クライアント
+ * 1つのNIOセレクタースレッドで、多数のサーバーへ同時に問い合わせる
+ * 名前解決はブロックするので、セレクタースレッドではなく仮想スレッドで済ませてから渡す
+ */
+public class ServerListPing {
+  private static final int MAX_RESPONSE_BYTES = 1 << 20;
+  private final Logger logger;
+  private final int timeoutMillis;
+  private final Queue<Session> pendingSessions = new ConcurrentLinkedQueue<>();
+  private final List<Session> sessions = new ArrayList<>();
+  private final ExecutorService resolver = Executors.newVirtualThreadPerTaskExecutor();
+  private Selector selector = null;
+
+  /**
+   * 問い合わせ結果
+   * 
+   * @param host          ホスト
+   * @param port          ポート
+   * @param online        応答があったかどうか
+   * @param latencyMillis 接続からステータス応答を受け取るまでの時間 (ミリ秒)
+   * @param onlinePlayers 現在のプレイヤー数
+   * @param maxPlayers    最大プレイヤー数
+   * @param sample        サーバーが返したプレイヤー名のサンプル
+   */
+  public record Result(String host, int port, boolean online, long latencyMillis, int onlinePlayers, int maxPlayers,
+      List<String> sample) {
+
+    static Result offline(String host, int port, long latencyMillis) {
+      return new Result(host, port, false, latencyMillis, 0, 0, Collections.emptyList());
+    }
+
+    public FreezeDetector.Sample toSample() {
+      return online ? new FreezeDetector.Sample(true, latencyMillis) : FreezeDetector.Sample.failed(latencyMillis);
+    }
+  }
+
+  private static final class Session {
+    private final String host;
+    private final int port;
+    private final long startedAt = System.nanoTime();
+    private final long deadline;
+    private final CompletableFuture<Result> future = new CompletableFuture<>();
+    private ByteBuffer request;
+    private ByteBuffer response = ByteBuffer.allocate(1024);
+    private SocketChannel channel;
+    private InetSocketAddress address;
+
+    private Session(String host, int port, long deadline) {
+      this.host = host;
+      this.port = port;
+      this.deadline = deadline;
+    }
+
+    private long elapsedMillis() {
+      return (System.nanoTime() - startedAt) / 1_000_000;
+    }
+  }
+
+  @Inject
+  public ServerListPing(Logger logger, Config config) {
+    this.logger = logger;
+    this.timeoutMillis = config.getInt("Common.Probe.Timeout", 5000);
+  }
+
+  /**
+   * サーバーに問い合わせる (呼び出し元のスレッドはブロックしない)
+   * 
+   * @return 問い合わせ結果 (タイムアウトや接続失敗の場合はオフラインの結果)
+   */
+  public CompletableFuture<Result> ping(String host, int port) {
+    Session session = new Session(host, port, System.nanoTime() + timeoutMillis * 1_000_000L);
+    session.request = ByteBuffer.wrap(statusRequest(host, port));
+    Selector started = ensureStarted();
+    resolver.execute(() -> {
+      // 遅いDNSが他の問い合わせを止めないように、ここで解決してからセレクターに登録する
+      InetSocketAddress address = new InetSocketAddress(host, port);
+      if (address.isUnresolved()) {
+        session.future.complete(Result.offline(host, port, session.elapsedMillis()));
+        return;
+      }
+
+      session.address = address;
+      pendingSessions.add(session);
+      started.wakeup();
+    });
+    return session.future;
+  }
+
+  private synchronized Selector ensureStarted() {
+    if (selector == null) {
+      try {
+        selector = Selector.open();
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to open selector", e);
+      }
+
+      Thread thread = new Thread(this::loop, "server-list-ping");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    return selector;
+  }
+
+  private void loop() {
+    while (true) {
+      try {
+        selector.select(100);
+        register();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          handle(key, (Session) key.attachment());
+        }
+
+        expire();
+      } catch (IOException | RuntimeException e) {
+        logger.error("ServerListPing selector error: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  private void register() {
+    Session session;
+    while ((session = pendingSessions.poll()) != null) {
+      try {
+        session.channel = SocketChannel.open();
+        session.channel.configureBlocking(false);
+        int ops = session.channel.connect(session.address)
+            ? SelectionKey.OP_WRITE
+            : SelectionKey.OP_CONNECT;
+        session.channel.register(selector, ops, session);
+        sessions.add(session);
+      } catch (IOException | RuntimeException e) {
+        finish(session, Result.offline(session.host, session.port, session.elapsedMillis()));
+      }
+    }
+  }
+
+  private void handle(SelectionKey key, Session session) {
+    try {
+      if (key.isConnectable() && session.channel.finishConnect()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+
+      if (key.isValid() && key.isWritable()) {
+        session.channel.write(session.request);
+        if (!session.request.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+
+      if (key.isValid() && key.isReadable()) {
+        if (session.channel.read(session.response) < 0) {
+          throw new IOException("Connection closed before status response");
+        }
+
+        Result result = parse(session);
+        if (result != null) {
+          finish(session, result);
+        } else if (!session.response.hasRemaining()) {
+          if (session.response.capacity() >= MAX_RESPONSE_BYTES) {
+            throw new IOException("Status response is too big");
+          }
+
+          ByteBuffer bigger = ByteBuffer.allocate(session.response.capacity() * 2);
+          session.response.flip();
+          bigger.put(session.response);
+          session.response = bigger;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      finish(session, Result.offline(session.host, session.port, session.elapsedMillis()));
+    }
+  }
+
+  private void expire() {
+    long now = System.nanoTime();
+    for (Session session : new ArrayList<>(sessions)) {
+      if (now - session.deadline > 0) {
+        finish(session, Result.offline(session.host, session.port, session.elapsedMillis()));
+      }
+    }
+  }
+
+  private void finish(Session session, Result result) {
+    sessions.remove(session);
+    if (session.channel != null) {
+      try {
+        session.channel.close();
+      } catch (IOException e) {
+        // 閉じられなくても結果には影響しない
+      }
+    }
+
+    session.future.complete(result);
+  }
+
+  // 受信したデータがステータス応答として揃っていれば解析する (まだ足りなければnull)
+  private Result parse(Session session) throws IOException {
+    ByteBuffer buffer = session.response.duplicate().flip();
+    int length = readVarInt(buffer);
+    if (length < 0 || buffer.remaining() < length) {
+      return null;
+    }
+
+    if (readVarInt(buffer) != 0x00) {
+      throw new IOException("Unexpected status packet id");
+    }
+
+    int jsonLength = readVarInt(buffer);
+    if (jsonLength < 0 || buffer.remaining() < jsonLength) {
+      throw new IOException("Malformed status response");
+    }
+
+    byte[] json = new byte[jsonLength];
+    buffer.get(json);
+    try {
+      JSONObject status = new JSONObject(new String(json, StandardCharsets.UTF_8));
+      JSONObject players = status.optJSONObject("players");
+      List<String> sample = new ArrayList<>();
+      int onlinePlayers = 0, maxPlayers = 0;
+      if (players != null) {
+        onlinePlayers = players.optInt("online");
+        maxPlayers = players.optInt("max");
+        JSONArray sampleArray = players.optJSONArray("sample");
+        if (sampleArray != null) {
+          for (int i = 0; i < sampleArray.length(); i++) {
+            JSONObject player = sampleArray.optJSONObject(i);
+            if (player != null) {
+              sample.add(player.optString("name"));
+            }
+          }
+        }
+      }
+
+      return new Result(session.host, session.port, true, session.elapsedMillis(), onlinePlayers, maxPlayers,
+          List.copyOf(sample));
+    } catch (JSONException e) {
+      throw new IOException("Invalid status json", e);
+    }
+  }
+
+  static byte[] statusRequest(String host, int port) {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    writeVarInt(body, 0x00); // パケットID
+    writeVarInt(body, -1); // プロトコルバージョン (ステータス取得では不問)
+    byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(body, hostBytes.length);
+    body.writeBytes(hostBytes);
+    body.write((port >> 8) & 0xFF);
+    body.write(port & 0xFF);
+    writeVarInt(body, 1); // 次の状態: status
+
+    ByteArrayOutputStream packet = new ByteArrayOutputStream();
+    writeVarInt(packet, body.size());
+    packet.writeBytes(body.toByteArray());
+    packet.writeBytes(new byte[] { 0x01, 0x00 }); // ステータス要求 (長さ1, パケットID 0x00)
+    return packet.toByteArray();
+  }
+
+  static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    out.write(value);
+  }
+
+  // 読み切れない場合は-1を返す
+  static int readVarInt(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int i = 0; i < 5; i++) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+
+      int b = buffer.get() & 0xFF;
+      value |= (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+
+    throw new IOException("VarInt is too big");
+  }
+}
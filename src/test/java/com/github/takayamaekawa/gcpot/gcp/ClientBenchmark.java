@@ -0,0 +1,98 @@
+package com.github.takayamaekawa.gcpot.gcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.compute.v1.InstancesClient;
+import com.google.cloud.compute.v1.InstancesSettings;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 呼び出しごとにInstancesClientを作る方法と、InstancesClientRegistryで共有する方法の
+ * 1回あたりのレイテンシと割り当て量を比べる (GCEの代わりにローカルのHTTPサーバーに対してinstances.getを呼ぶ)
+ * 
+ * 本番のjarには含めない (src/test) ので、mvn test-compileの後に実行する
+ * 使い方: java -cp target/test-classes:target/classes:<依存関係> com.github.takayamaekawa.gcpot.gcp.ClientBenchmark [回数]
+ */
+public class ClientBenchmark {
+  private static final String PROJECT = "bench-project";
+  private static final String ZONE = "asia-northeast1-b";
+  private static final String INSTANCE = "bench-instance";
+
+  private interface Call {
+    void run() throws IOException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+    // ヘッダーと本文の書き込みでNagleの遅延が入り、差が見えなくなるのを避ける
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    byte[] body = "{\"name\":\"bench-instance\",\"status\":\"RUNNING\"}".getBytes(StandardCharsets.UTF_8);
+    server.createContext("/", exchange -> {
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+
+    // トークンの取得でネットワークに出ないように、期限の長いダミーのアクセストークンを使う
+    GoogleCredentials credentials = GoogleCredentials.create(
+        new AccessToken("bench", Date.from(Instant.now().plusSeconds(3600))));
+    String endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+    InstancesSettings settings = InstancesSettings.newBuilder()
+        .setEndpoint(endpoint)
+        .setCredentialsProvider(FixedCredentialsProvider.create(credentials))
+        .build();
+
+    try {
+      // 以前の方法: 呼び出しごとに作って閉じる (start/stop/resetでは閉じていなかった)
+      measure("create-per-call", iterations, () -> {
+        try (InstancesClient client = InstancesClient.create(settings)) {
+          client.get(PROJECT, ZONE, INSTANCE);
+        }
+      });
+
+      // 現在の方法: InstancesClientRegistryから毎回取得する (最初の1回だけ作成し、最後に閉じる)
+      InstancesClientRegistry registry = new InstancesClientRegistry(LoggerFactory.getLogger("bench"), endpoint);
+      measure("registry", iterations, () -> registry.get("bench", credentials).get(PROJECT, ZONE, INSTANCE));
+      registry.close();
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static void measure(String name, int iterations, Call call) throws IOException {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().threadId();
+
+    // JITのウォームアップ
+    for (int i = 0; i < Math.max(10, iterations / 10); i++) {
+      call.run();
+    }
+
+    long bytesBefore = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      call.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+
+    System.out.printf("%-16s %8.3f ms/call %10d bytes/call (calling thread)%n",
+        name, elapsed / 1_000_000.0 / iterations, bytes / iterations);
+  }
+}